@@ -19,6 +19,7 @@ package org.springframework.cloud.function.adapter.aws;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
@@ -42,6 +43,12 @@ public class SpringBootRequestHandler<E, O> extends SpringFunctionInitializer im
 	public Object handleRequest(E event, Context context) {
 		initialize();
 		Object input = convertEvent(event);
+		if (isSingleValue(input)) {
+			Function<Object, Object> scalar = getScalarFunction();
+			if (scalar != null) {
+				return scalar.apply(input);
+			}
+		}
 		Flux<?> output = apply(extract(input));
 		return result(input, output);
 	}
@@ -22,12 +22,14 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.function.support.BinaryUtils;
 
 import reactor.core.publisher.Flux;
 
@@ -53,7 +55,28 @@ public class SpringBootStreamHandler extends SpringFunctionInitializer
 			throws IOException {
 		initialize();
 		Object value = convertStream(input);
+		boolean binary = BinaryUtils.isBinary(getOutputType());
+		if (isSingleValue(value)) {
+			Function<Object, Object> scalar = getScalarFunction();
+			if (scalar != null) {
+				Object result = scalar.apply(value);
+				if (binary) {
+					BinaryUtils.write(result, output);
+				}
+				else {
+					mapper.writeValue(output, result);
+				}
+				return;
+			}
+		}
 		Flux<?> flux = apply(extract(value));
+		if (binary) {
+			// Raw bytes, not a JSON array
+			for (Object result : flux.toIterable()) {
+				BinaryUtils.write(result, output);
+			}
+			return;
+		}
 		mapper.writeValue(output, result(value, flux));
 	}
 
@@ -69,10 +92,13 @@ public class SpringBootStreamHandler extends SpringFunctionInitializer
 	}
 
 	private boolean isSingleValue(Object input) {
-		return !(input instanceof Collection);
+		return !(input instanceof Collection) && !(input instanceof Flux);
 	}
 
 	private Flux<?> extract(Object input) {
+		if (input instanceof Flux) {
+			return (Flux<?>) input;
+		}
 		if (input instanceof Collection) {
 			return Flux.fromIterable((Iterable<?>) input);
 		}
@@ -80,8 +106,17 @@ public class SpringBootStreamHandler extends SpringFunctionInitializer
 	}
 
 	private Object convertStream(InputStream input) {
+		Class<?> type = getInputType();
 		try {
-			return mapper.readValue(input, getInputType());
+			if (BinaryUtils.isBinary(type)) {
+				// Raw bytes, in chunks if the function accepts a Flux
+				Class<?> wrapper = getInputWrapper();
+				if (wrapper != null && Flux.class.isAssignableFrom(wrapper)) {
+					return BinaryUtils.chunks(input, type);
+				}
+				return BinaryUtils.read(input, type);
+			}
+			return mapper.readValue(input, type);
 		}
 		catch (Exception e) {
 			throw new IllegalStateException("Cannot convert event", e);
@@ -34,6 +34,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.cloud.function.context.FunctionInspector;
 import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.support.FunctionUtils;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.util.ClassUtils;
 
@@ -121,6 +122,17 @@ public class SpringFunctionInitializer implements Closeable {
 		this.context = context;
 	}
 
+	/**
+	 * The plain (non-reactive) target of the function, if there is one, so that single
+	 * values can be processed without assembling a {@link Flux}.
+	 *
+	 * @return the scalar function or null
+	 */
+	protected Function<Object, Object> getScalarFunction() {
+		return this.function == null ? null
+				: FunctionUtils.getScalarFunction(this.function);
+	}
+
 	protected Class<?> getInputType() {
 		if (inspector != null) {
 			return inspector.getInputType(this.name);
@@ -128,6 +140,20 @@ public class SpringFunctionInitializer implements Closeable {
 		return Object.class;
 	}
 
+	protected Class<?> getInputWrapper() {
+		if (inspector != null) {
+			return inspector.getInputWrapper(this.name);
+		}
+		return Object.class;
+	}
+
+	protected Class<?> getOutputType() {
+		if (inspector != null) {
+			return inspector.getOutputType(this.name);
+		}
+		return Object.class;
+	}
+
 	protected Flux<?> apply(Flux<?> input) {
 		if (this.function != null) {
 			return function.apply(input);
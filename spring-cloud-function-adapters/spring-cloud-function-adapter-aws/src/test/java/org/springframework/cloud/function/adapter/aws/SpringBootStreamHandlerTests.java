@@ -18,6 +18,8 @@ package org.springframework.cloud.function.adapter.aws;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Function;
 
 import org.junit.Test;
@@ -28,6 +30,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
+import reactor.core.publisher.Flux;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -48,6 +52,27 @@ public class SpringBootStreamHandlerTests {
 		assertThat(output.toString()).isEqualTo("{\"value\":\"FOO\"}");
 	}
 
+	@Test
+	public void binaryFunction() throws Exception {
+		handler = new SpringBootStreamHandler(BinaryConfig.class);
+		handler.initialize();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		handler.handleRequest(new ByteArrayInputStream("foo".getBytes()), output, null);
+		assertThat(output.toString()).isEqualTo("FOO");
+	}
+
+	@Configuration
+	@Import({ ContextFunctionCatalogAutoConfiguration.class,
+			JacksonAutoConfiguration.class })
+	protected static class BinaryConfig {
+		@Bean
+		public Function<Flux<ByteBuffer>, Flux<ByteBuffer>> function() {
+			return flux -> flux.map(buffer -> ByteBuffer
+					.wrap(StandardCharsets.UTF_8.decode(buffer).toString().toUpperCase()
+							.getBytes()));
+		}
+	}
+
 	@Configuration
 	@Import({ ContextFunctionCatalogAutoConfiguration.class,
 			JacksonAutoConfiguration.class })
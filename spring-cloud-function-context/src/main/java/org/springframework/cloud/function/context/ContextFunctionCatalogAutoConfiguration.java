@@ -20,6 +20,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -47,12 +48,16 @@ import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.cloud.function.context.FunctionTypeIndex.FunctionType;
 import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.support.BatchingFluxConsumer;
+import org.springframework.cloud.function.support.BatchingFluxFunction;
 import org.springframework.cloud.function.support.FluxConsumer;
 import org.springframework.cloud.function.support.FluxFunction;
 import org.springframework.cloud.function.support.FluxSupplier;
 import org.springframework.cloud.function.support.FunctionFactoryMetadata;
 import org.springframework.cloud.function.support.FunctionUtils;
+import org.springframework.cloud.function.support.ParallelFluxFunction;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.ResolvableType;
@@ -141,7 +146,12 @@ public class ContextFunctionCatalogAutoConfiguration {
 
 		@Override
 		public String getName(Object function) {
-			return processor.registrations.get(function);
+			return processor.findName(function);
+		}
+
+		@Override
+		public Map<String, String> getProperties(String name) {
+			return processor.findProperties(name);
 		}
 
 	}
@@ -150,14 +160,62 @@ public class ContextFunctionCatalogAutoConfiguration {
 	protected static class ContextFunctionPostProcessor
 			implements BeanDefinitionRegistryPostProcessor {
 
+		/**
+		 * Registration property for the maximum number of items in a batch, for
+		 * functions that accept and return lists (and consumers that accept lists).
+		 */
+		public static final String BATCH_SIZE = "batch.size";
+
+		/**
+		 * Registration property for the maximum time (in milliseconds) to wait for a
+		 * batch to fill up.
+		 */
+		public static final String BATCH_TIMEOUT = "batch.timeout";
+
+		/**
+		 * Registration property that can be set to "true" to apply a function that
+		 * accepts and returns lists (or a consumer that accepts lists) to batches of its
+		 * input, instead of to each input list as it comes.
+		 */
+		public static final String BATCH_ENABLED = "batch.enabled";
+
+		/**
+		 * Registration property that can be set to "true" to apply a function to its
+		 * input on several rails of a CPU-bound scheduler.
+		 */
+		public static final String PARALLEL_ENABLED = "parallel.enabled";
+
+		/**
+		 * Registration property for the number of rails in parallel mode (defaults to
+		 * the number of processors).
+		 */
+		public static final String PARALLEL_RAILS = "parallel.rails";
+
+		/**
+		 * Registration property for the number of items to prefetch on each rail in
+		 * parallel mode.
+		 */
+		public static final String PARALLEL_PREFETCH = "parallel.prefetch";
+
+		/**
+		 * Registration property that can be set to "false" to emit the output in
+		 * parallel mode as soon as it is ready, instead of in input order.
+		 */
+		public static final String PARALLEL_ORDERED = "parallel.ordered";
+
 		private Set<String> suppliers = new HashSet<>();
 		private Set<String> functions = new HashSet<>();
 		private Set<String> consumers = new HashSet<>();
+		private Set<String> batches = new HashSet<>();
+
+		private Map<String, Map<String, String>> properties = new HashMap<>();
 
 		private BeanDefinitionRegistry registry;
 		private ConversionService conversionService;
 		private Map<Object, String> registrations = new HashMap<>();
 
+		private volatile FunctionTypeIndex index;
+
 		@Override
 		public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
 			this.registry = registry;
@@ -230,9 +288,43 @@ public class ContextFunctionCatalogAutoConfiguration {
 				String key = targets.get(target.getTarget());
 				wrap(target, key);
 			}
+			this.index = index();
 			return registrations;
 		}
 
+		/**
+		 * Resolve the types of all the registered functions up front, so the inspector
+		 * doesn't have to walk the bean definitions again on every request.
+		 */
+		private FunctionTypeIndex index() {
+			Map<String, FunctionType> types = new HashMap<>();
+			for (String name : new HashSet<>(this.registrations.values())) {
+				types.put(name,
+						new FunctionType(findInputType(name), findOutputType(name),
+								findInputWrapper(name), findOutputWrapper(name),
+								isMessage(name)));
+			}
+			return new FunctionTypeIndex(types, this.registrations);
+		}
+
+		private FunctionType findIndexedType(String name) {
+			FunctionTypeIndex index = this.index;
+			return index == null ? null : index.getType(name);
+		}
+
+		private String findName(Object function) {
+			FunctionTypeIndex index = this.index;
+			return index == null ? this.registrations.get(function)
+					: index.getName(function);
+		}
+
+		private Map<String, String> findProperties(String name) {
+			Map<String, String> properties = name == null ? null
+					: this.properties.get(name);
+			return properties == null ? Collections.emptyMap()
+					: Collections.unmodifiableMap(properties);
+		}
+
 		private Collection<String> getAliases(String key) {
 			Collection<String> names = new LinkedHashSet<>();
 			String value = getQualifier(key);
@@ -248,6 +340,7 @@ public class ContextFunctionCatalogAutoConfiguration {
 
 		private void wrap(FunctionRegistration<Object> registration, String key) {
 			Object target = registration.getTarget();
+			this.properties.put(key, registration.getProperties());
 			if (target instanceof Supplier) {
 				registration.target(target((Supplier<?>) target, key));
 			}
@@ -301,6 +394,13 @@ public class ContextFunctionCatalogAutoConfiguration {
 				return function;
 			}
 			else if (!isFluxFunction(key, target)) {
+				if (isBatchFunction(key)) {
+					this.batches.add(key);
+					return batch(target, this.properties.get(key));
+				}
+				if (isParallelFunction(key)) {
+					return parallel(target, this.properties.get(key));
+				}
 				@SuppressWarnings({ "unchecked", "rawtypes" })
 				FluxFunction value = new FluxFunction(target);
 				return value;
@@ -317,6 +417,10 @@ public class ContextFunctionCatalogAutoConfiguration {
 				return consumer;
 			}
 			else if (!isFluxConsumer(key, target)) {
+				if (isBatchConsumer(key)) {
+					this.batches.add(key);
+					return batch(target, this.properties.get(key));
+				}
 				@SuppressWarnings({ "unchecked", "rawtypes" })
 				FluxConsumer value = new FluxConsumer(target);
 				return value;
@@ -347,6 +451,65 @@ public class ContextFunctionCatalogAutoConfiguration {
 			return fluxTypes || FunctionUtils.isFluxFunction(function);
 		}
 
+		private Function<?, ?> batch(Function<?, ?> target,
+				Map<String, String> properties) {
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			BatchingFluxFunction value = new BatchingFluxFunction((Function) target,
+					batchSize(properties), batchTimeout(properties));
+			return value;
+		}
+
+		private Consumer<?> batch(Consumer<?> target, Map<String, String> properties) {
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			BatchingFluxConsumer value = new BatchingFluxConsumer((Consumer) target,
+					batchSize(properties), batchTimeout(properties));
+			return value;
+		}
+
+		private int batchSize(Map<String, String> properties) {
+			return Integer.valueOf(properties.getOrDefault(BATCH_SIZE,
+					String.valueOf(BatchingFluxFunction.DEFAULT_SIZE)));
+		}
+
+		private Duration batchTimeout(Map<String, String> properties) {
+			return properties.containsKey(BATCH_TIMEOUT)
+					? Duration.ofMillis(Long.valueOf(properties.get(BATCH_TIMEOUT)))
+					: BatchingFluxFunction.DEFAULT_TIMEOUT;
+		}
+
+		private Function<?, ?> parallel(Function<?, ?> target,
+				Map<String, String> properties) {
+			int rails = Integer.valueOf(properties.getOrDefault(PARALLEL_RAILS,
+					String.valueOf(Runtime.getRuntime().availableProcessors())));
+			int prefetch = Integer.valueOf(properties.getOrDefault(PARALLEL_PREFETCH,
+					String.valueOf(ParallelFluxFunction.DEFAULT_PREFETCH)));
+			boolean ordered = !"false".equals(properties.get(PARALLEL_ORDERED));
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			ParallelFluxFunction value = new ParallelFluxFunction((Function) target,
+					rails, prefetch, ordered);
+			return value;
+		}
+
+		private boolean isParallelFunction(String name) {
+			Map<String, String> properties = this.properties.get(name);
+			return properties != null
+					&& "true".equals(properties.get(PARALLEL_ENABLED));
+		}
+
+		private boolean isBatchFunction(String name) {
+			return isBatchEnabled(name) && List.class.equals(findInputType(name))
+					&& List.class.isAssignableFrom(findOutputType(name));
+		}
+
+		private boolean isBatchConsumer(String name) {
+			return isBatchEnabled(name) && List.class.equals(findInputType(name));
+		}
+
+		private boolean isBatchEnabled(String name) {
+			Map<String, String> properties = this.properties.get(name);
+			return properties != null && "true".equals(properties.get(BATCH_ENABLED));
+		}
+
 		private boolean isFluxConsumer(String name, Consumer<?> consumer) {
 			boolean fluxTypes = this.hasFluxTypes(name);
 			return fluxTypes || FunctionUtils.isFluxConsumer(consumer);
@@ -438,6 +601,12 @@ public class ContextFunctionCatalogAutoConfiguration {
 					}
 				}
 			}
+			if (param instanceof ParameterizedType && !paramType.isWrapper()
+					&& this.batches.contains(name)) {
+				// Batched functions accept and return the elements of the lists
+				param = extractNestedType(paramType,
+						((ParameterizedType) param).getActualTypeArguments()[0]);
+			}
 			if (param instanceof ParameterizedType) {
 				ParameterizedType concrete = (ParameterizedType) param;
 				param = concrete.getRawType();
@@ -469,6 +638,11 @@ public class ContextFunctionCatalogAutoConfiguration {
 
 		private Type extractType(Type type, ParamType paramType, int index) {
 			Type param;
+			if (type instanceof ParameterizedType && FunctionRegistration.class
+					.equals(((ParameterizedType) type).getRawType())) {
+				// A registration carries the function type as its only generic
+				type = ((ParameterizedType) type).getActualTypeArguments()[0];
+			}
 			if (type instanceof ParameterizedType) {
 				ParameterizedType parameterizedType = (ParameterizedType) type;
 				if (parameterizedType.getActualTypeArguments().length == 1) {
@@ -519,6 +693,10 @@ public class ContextFunctionCatalogAutoConfiguration {
 		}
 
 		private boolean isMessage(String name) {
+			FunctionType type = findIndexedType(name);
+			if (type != null) {
+				return type.isMessage();
+			}
 			if (name == null || !registry.containsBeanDefinition(name)) {
 				return false;
 			}
@@ -532,6 +710,10 @@ public class ContextFunctionCatalogAutoConfiguration {
 		}
 
 		private Class<?> findInputWrapper(String name) {
+			FunctionType type = findIndexedType(name);
+			if (type != null) {
+				return type.getInputWrapper();
+			}
 			if (name == null || !registry.containsBeanDefinition(name)) {
 				return Object.class;
 			}
@@ -541,6 +723,10 @@ public class ContextFunctionCatalogAutoConfiguration {
 		}
 
 		private Class<?> findOutputWrapper(String name) {
+			FunctionType type = findIndexedType(name);
+			if (type != null) {
+				return type.getOutputWrapper();
+			}
 			if (name == null || !registry.containsBeanDefinition(name)) {
 				return Object.class;
 			}
@@ -550,6 +736,10 @@ public class ContextFunctionCatalogAutoConfiguration {
 		}
 
 		private Class<?> findInputType(String name) {
+			FunctionType type = findIndexedType(name);
+			if (type != null) {
+				return type.getInputType();
+			}
 			if (name == null || !registry.containsBeanDefinition(name)) {
 				return Object.class;
 			}
@@ -559,6 +749,10 @@ public class ContextFunctionCatalogAutoConfiguration {
 		}
 
 		private Class<?> findOutputType(String name) {
+			FunctionType type = findIndexedType(name);
+			if (type != null) {
+				return type.getOutputType();
+			}
 			if (name == null || !registry.containsBeanDefinition(name)) {
 				return Object.class;
 			}
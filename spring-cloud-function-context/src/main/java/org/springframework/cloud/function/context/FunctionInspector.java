@@ -17,6 +17,8 @@
 package org.springframework.cloud.function.context;
 
 import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
 
 import reactor.core.publisher.Flux;
@@ -42,6 +44,14 @@ public interface FunctionInspector {
 
 	String getName(Object function);
 
+	/**
+	 * @param name the name of a function
+	 * @return the properties the function was registered with (never null)
+	 */
+	default Map<String, String> getProperties(String name) {
+		return Collections.emptyMap();
+	}
+
 	// Maybe make this a default method?
 	static boolean isWrapper(Type type) {
 		return Flux.class.equals(type) || Mono.class.equals(type)
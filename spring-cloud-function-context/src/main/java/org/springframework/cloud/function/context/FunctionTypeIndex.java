@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.context;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the resolved type information for the functions in a catalog.
+ * Built once when the catalog is created, so that a {@link FunctionInspector} can answer
+ * queries with a map lookup instead of walking bean definitions on every call.
+ *
+ * @author Dave Syer
+ *
+ */
+public final class FunctionTypeIndex {
+
+	private final Map<String, FunctionType> types;
+
+	private final Map<Object, String> names;
+
+	public FunctionTypeIndex(Map<String, FunctionType> types, Map<Object, String> names) {
+		this.types = Collections.unmodifiableMap(new HashMap<>(types));
+		Map<Object, String> targets = new IdentityHashMap<>();
+		targets.putAll(names);
+		this.names = Collections.unmodifiableMap(targets);
+	}
+
+	/**
+	 * @param name the name of a function
+	 * @return the resolved types for the function, or null if it is not indexed
+	 */
+	public FunctionType getType(String name) {
+		return name == null ? null : this.types.get(name);
+	}
+
+	/**
+	 * @param function a target from the catalog
+	 * @return the name the target was registered with, or null if it is not indexed
+	 */
+	public String getName(Object function) {
+		return this.names.get(function);
+	}
+
+	public boolean contains(String name) {
+		return name != null && this.types.containsKey(name);
+	}
+
+	/**
+	 * Resolved input and output types of a single function.
+	 */
+	public static final class FunctionType {
+
+		private final Class<?> inputType;
+
+		private final Class<?> outputType;
+
+		private final Class<?> inputWrapper;
+
+		private final Class<?> outputWrapper;
+
+		private final boolean message;
+
+		public FunctionType(Class<?> inputType, Class<?> outputType,
+				Class<?> inputWrapper, Class<?> outputWrapper, boolean message) {
+			this.inputType = inputType;
+			this.outputType = outputType;
+			this.inputWrapper = inputWrapper;
+			this.outputWrapper = outputWrapper;
+			this.message = message;
+		}
+
+		public Class<?> getInputType() {
+			return this.inputType;
+		}
+
+		public Class<?> getOutputType() {
+			return this.outputType;
+		}
+
+		public Class<?> getInputWrapper() {
+			return this.inputWrapper;
+		}
+
+		public Class<?> getOutputWrapper() {
+			return this.outputWrapper;
+		}
+
+		public boolean isMessage() {
+			return this.message;
+		}
+
+	}
+
+}
@@ -16,7 +16,9 @@
 
 package org.springframework.cloud.function.context;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -24,6 +26,7 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 
 import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.support.FluxFunction;
 import org.springframework.util.StringUtils;
 
 /**
@@ -38,6 +41,22 @@ public class InMemoryFunctionCatalog implements FunctionCatalog {
 
 	private final Map<String, Supplier<?>> suppliers;
 
+	/**
+	 * The maximum number of composite functions that are kept after they are looked up.
+	 */
+	public static final int MAX_COMPOSITES = 256;
+
+	// The names of composites come from the caller (e.g. a request path), so the cache
+	// is bounded (least recently used entries are evicted)
+	private final Map<String, Function<?, ?>> composites = Collections
+			.synchronizedMap(new LinkedHashMap<String, Function<?, ?>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, Function<?, ?>> eldest) {
+					return size() > MAX_COMPOSITES;
+				}
+			});
+
 	public InMemoryFunctionCatalog(Map<String, Supplier<?>> suppliers,
 			Map<String, Function<?, ?>> functions, Map<String, Consumer<?>> consumers) {
 		this.suppliers = suppliers;
@@ -75,16 +94,41 @@ public class InMemoryFunctionCatalog implements FunctionCatalog {
 	}
 
 	@Override
-	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@SuppressWarnings("unchecked")
 	public <T, R> Function<T, R> lookupFunction(String name) {
 		if (name.indexOf(',') == -1) {
 			return (Function<T, R>) functions.get(name);
 		}
+		Function<?, ?> function = composites.get(name);
+		if (function == null) {
+			function = compose(name);
+			if (function != null) {
+				composites.putIfAbsent(name, function);
+			}
+		}
+		return (Function<T, R>) function;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Function<?, ?> compose(String name) {
 		String[] tokens = StringUtils.tokenizeToStringArray(name, ",");
 		Function function = null;
 		for (String token : tokens) {
-			Function next = lookupFunction(token);
-			function = (function == null) ? next : function.andThen(next);
+			Function next = functions.get(token);
+			if (next == null) {
+				return null;
+			}
+			if (function == null) {
+				function = next;
+			}
+			else if (function instanceof FluxFunction && next instanceof FluxFunction) {
+				// Fuse adjacent simple functions into a single map() on the Flux
+				function = new FluxFunction(((FluxFunction) function).getTarget()
+						.andThen(((FluxFunction) next).getTarget()));
+			}
+			else {
+				function = function.andThen(next);
+			}
 		}
 		return function;
 	}
@@ -94,4 +138,18 @@ public class InMemoryFunctionCatalog implements FunctionCatalog {
 	public <T> Consumer<T> lookupConsumer(String name) {
 		return (Consumer<T>) consumers.get(name);
 	}
+
+	@Override
+	public Set<String> getNames(Class<?> type) {
+		if (Supplier.class.isAssignableFrom(type)) {
+			return Collections.unmodifiableSet(suppliers.keySet());
+		}
+		if (Function.class.isAssignableFrom(type)) {
+			return Collections.unmodifiableSet(functions.keySet());
+		}
+		if (Consumer.class.isAssignableFrom(type)) {
+			return Collections.unmodifiableSet(consumers.keySet());
+		}
+		return Collections.emptySet();
+	}
 }
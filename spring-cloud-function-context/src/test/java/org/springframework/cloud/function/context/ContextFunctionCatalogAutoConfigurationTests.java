@@ -17,6 +17,9 @@
 package org.springframework.cloud.function.context;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -32,6 +35,9 @@ import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.cloud.function.compiler.CompiledFunctionFactory;
 import org.springframework.cloud.function.compiler.FunctionCompiler;
+import org.springframework.cloud.function.support.BatchingFluxConsumer;
+import org.springframework.cloud.function.support.BatchingFluxFunction;
+import org.springframework.cloud.function.support.ParallelFluxFunction;
 import org.springframework.cloud.function.test.GenericFunction;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -73,6 +79,18 @@ public class ContextFunctionCatalogAutoConfigurationTests {
 		assertThat(catalog.lookupFunction("function")).isInstanceOf(Function.class);
 	}
 
+	@Test
+	public void inspectorUsesIndexedTypes() {
+		create(SimpleConfiguration.class);
+		Function<Flux<String>, Flux<String>> function = catalog.lookupFunction("function");
+		assertThat(inspector.getName(function)).isEqualTo("function");
+		assertThat(inspector.getInputType("function")).isEqualTo(String.class);
+		assertThat(inspector.getOutputType("function")).isEqualTo(String.class);
+		assertThat(inspector.isMessage("function")).isFalse();
+		assertThat(inspector.getName(new Object())).isNull();
+		assertThat(inspector.getInputType("missing")).isEqualTo(Object.class);
+	}
+
 	@Test
 	public void genericFunction() {
 		create(GenericConfiguration.class);
@@ -82,6 +100,55 @@ public class ContextFunctionCatalogAutoConfigurationTests {
 		assertThat(inspector.getInputWrapper("function")).isAssignableFrom(Map.class);
 	}
 
+	@Test
+	public void batchFunction() {
+		create(BatchConfiguration.class);
+		Function<Flux<String>, Flux<String>> function = catalog
+				.lookupFunction("function");
+		assertThat(function).isInstanceOf(BatchingFluxFunction.class);
+		assertThat(inspector.getInputType("function")).isEqualTo(String.class);
+		assertThat(inspector.getOutputType("function")).isEqualTo(String.class);
+		assertThat(inspector.getInputWrapper("function")).isEqualTo(List.class);
+		assertThat(function.apply(Flux.just("foo", "bar", "spam")).collectList().block())
+				.containsExactly("FOO", "BAR", "SPAM");
+		assertThat(context.getBean(BatchConfiguration.class).sizes).containsExactly(2,
+				1);
+	}
+
+	@Test
+	public void listFunctionNotBatchedByDefault() {
+		create(ListConfiguration.class);
+		Function<Flux<List<String>>, Flux<List<String>>> function = catalog
+				.lookupFunction("function");
+		assertThat(function).isNotInstanceOf(BatchingFluxFunction.class);
+		assertThat(function.apply(Flux.just(Arrays.asList("foo", "bar", "spam")))
+				.collectList().block())
+						.containsExactly(Arrays.asList("FOO", "BAR", "SPAM"));
+	}
+
+	@Test
+	public void batchConsumer() {
+		create(BatchConsumerConfiguration.class);
+		Consumer<Flux<String>> consumer = catalog.lookupConsumer("consumer");
+		assertThat(consumer).isInstanceOf(BatchingFluxConsumer.class);
+		assertThat(inspector.getInputType("consumer")).isEqualTo(String.class);
+		consumer.accept(Flux.just("foo", "bar", "spam"));
+		assertThat(context.getBean(BatchConsumerConfiguration.class).batches)
+				.containsExactly(Arrays.asList("foo", "bar"),
+						Collections.singletonList("spam"));
+	}
+
+	@Test
+	public void parallelFunction() {
+		create(ParallelConfiguration.class);
+		Function<Flux<String>, Flux<String>> function = catalog
+				.lookupFunction("function");
+		assertThat(function).isInstanceOf(ParallelFluxFunction.class);
+		assertThat(inspector.getInputType("function")).isEqualTo(String.class);
+		assertThat(function.apply(Flux.just("foo", "bar", "spam")).collectList().block())
+				.containsExactly("FOO", "BAR", "SPAM");
+	}
+
 	@Test
 	public void fluxMessageFunction() {
 		create(FluxMessageConfiguration.class);
@@ -298,6 +365,63 @@ public class ContextFunctionCatalogAutoConfigurationTests {
 		}
 	}
 
+	@EnableAutoConfiguration
+	@Configuration
+	protected static class BatchConfiguration {
+		private List<Integer> sizes = new ArrayList<>();
+
+		@Bean
+		public FunctionRegistration<Function<List<String>, List<String>>> function() {
+			Map<String, String> properties = new HashMap<>();
+			properties.put("batch.enabled", "true");
+			properties.put("batch.size", "2");
+			return new FunctionRegistration<Function<List<String>, List<String>>>(
+					values -> {
+						sizes.add(values.size());
+						return values.stream().map(value -> value.toUpperCase())
+								.collect(Collectors.toList());
+					}).properties(properties);
+		}
+	}
+
+	@EnableAutoConfiguration
+	@Configuration
+	protected static class ListConfiguration {
+		@Bean
+		public Function<List<String>, List<String>> function() {
+			return values -> values.stream().map(value -> value.toUpperCase())
+					.collect(Collectors.toList());
+		}
+	}
+
+	@EnableAutoConfiguration
+	@Configuration
+	protected static class BatchConsumerConfiguration {
+		private List<List<String>> batches = new ArrayList<>();
+
+		@Bean
+		public FunctionRegistration<Consumer<List<String>>> consumer() {
+			Map<String, String> properties = new HashMap<>();
+			properties.put("batch.enabled", "true");
+			properties.put("batch.size", "2");
+			return new FunctionRegistration<Consumer<List<String>>>(
+					values -> batches.add(values)).properties(properties);
+		}
+	}
+
+	@EnableAutoConfiguration
+	@Configuration
+	protected static class ParallelConfiguration {
+		@Bean
+		public FunctionRegistration<Function<String, String>> function() {
+			Map<String, String> properties = new HashMap<>();
+			properties.put("parallel.enabled", "true");
+			properties.put("parallel.rails", "2");
+			return new FunctionRegistration<Function<String, String>>(
+					value -> value.toUpperCase()).properties(properties);
+		}
+	}
+
 	@EnableAutoConfiguration
 	@Configuration
 	protected static class FluxMessageConfiguration {
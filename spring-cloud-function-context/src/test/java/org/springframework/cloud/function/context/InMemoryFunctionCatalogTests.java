@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.context;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import org.springframework.cloud.function.support.FluxFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class InMemoryFunctionCatalogTests {
+
+	private final Map<String, Function<?, ?>> functions = new HashMap<>();
+
+	private final InMemoryFunctionCatalog catalog = new InMemoryFunctionCatalog(
+			Collections.emptyMap(), functions, Collections.emptyMap());
+
+	@Test
+	public void composedFunctionsAreFused() {
+		functions.put("uppercase",
+				new FluxFunction<String, String>(value -> value.toUpperCase()));
+		functions.put("exclaim", new FluxFunction<String, String>(value -> value + "!"));
+		Function<Flux<String>, Flux<String>> function = catalog
+				.lookupFunction("uppercase,exclaim");
+		assertThat(function).isInstanceOf(FluxFunction.class);
+		assertThat(function.apply(Flux.just("foo")).blockFirst()).isEqualTo("FOO!");
+		assertThat((Object) catalog.lookupFunction("uppercase,exclaim"))
+				.isSameAs(function);
+	}
+
+	@Test
+	public void composedWithFluxFunction() {
+		functions.put("uppercase",
+				new FluxFunction<String, String>(value -> value.toUpperCase()));
+		Function<Flux<String>, Flux<String>> twice = flux -> flux
+				.flatMap(value -> Flux.just(value, value));
+		functions.put("twice", twice);
+		Function<Flux<String>, Flux<String>> function = catalog
+				.lookupFunction("uppercase,twice");
+		assertThat(function.apply(Flux.just("foo")).collectList().block())
+				.containsExactly("FOO", "FOO");
+	}
+
+	@Test
+	public void compositeCacheIsBounded() {
+		functions.put("f", new FluxFunction<String, String>(value -> value + "!"));
+		String name = "f,f";
+		Object first = catalog.lookupFunction(name);
+		for (int i = 0; i < InMemoryFunctionCatalog.MAX_COMPOSITES; i++) {
+			name = name + ",f";
+			catalog.lookupFunction(name);
+		}
+		// The first composite was evicted, the most recent one was not
+		assertThat((Object) catalog.lookupFunction("f,f")).isNotSameAs(first);
+		assertThat((Object) catalog.lookupFunction(name))
+				.isSameAs(catalog.lookupFunction(name));
+	}
+
+	@Test
+	public void composedWithMissingFunction() {
+		functions.put("uppercase",
+				new FluxFunction<String, String>(value -> value.toUpperCase()));
+		assertThat((Object) catalog.lookupFunction("uppercase,missing")).isNull();
+	}
+
+}
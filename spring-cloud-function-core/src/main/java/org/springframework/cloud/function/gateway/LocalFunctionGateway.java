@@ -26,6 +26,7 @@ import org.reactivestreams.Subscription;
 
 import org.springframework.cloud.function.invoker.FunctionInvokingRunnable;
 import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.support.FunctionUtils;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.Trigger;
 import org.springframework.util.Assert;
@@ -49,6 +50,13 @@ public class LocalFunctionGateway implements FunctionGateway {
 	@Override
 	public <T, R> R invoke(String functionName, T request) {
 		Function<T, R> function = this.catalog.lookupFunction(functionName);
+		if (!(request instanceof Publisher)) {
+			// Single values can skip the reactive wrapper altogether
+			Function<T, R> scalar = FunctionUtils.getScalarFunction(function);
+			if (scalar != null) {
+				return scalar.apply(request);
+			}
+		}
 		return function.apply(request);
 	}
 
@@ -64,7 +72,9 @@ public class LocalFunctionGateway implements FunctionGateway {
 	@Override
 	public <T, R> void subscribe(Publisher<T> publisher, String functionName,
 			final Consumer<R> consumer) {
-		final Function<T, R> function = this.catalog.lookupFunction(functionName);
+		Function<T, R> target = this.catalog.lookupFunction(functionName);
+		Function<T, R> scalar = FunctionUtils.getScalarFunction(target);
+		final Function<T, R> function = scalar != null ? scalar : target;
 		publisher.subscribe(new Subscriber<T>() {
 
 			@Override
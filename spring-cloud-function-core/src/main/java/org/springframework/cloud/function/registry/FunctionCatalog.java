@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.function.registry;
 
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -30,4 +31,16 @@ public interface FunctionCatalog {
 	<T, R> Function<T, R> lookupFunction(String name);
 
 	<T> Consumer<T> lookupConsumer(String name);
+
+	/**
+	 * List the names of the registered functions of the given type (i.e. one of
+	 * {@link Supplier}, {@link Function} or {@link Consumer}). Composite function names
+	 * are not included.
+	 * 
+	 * @param type the kind of function to list
+	 * @return the names, or null if the catalog cannot list its contents
+	 */
+	default Set<String> getNames(Class<?> type) {
+		return null;
+	}
 }
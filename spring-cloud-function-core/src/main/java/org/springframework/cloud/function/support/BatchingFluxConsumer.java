@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.support;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.util.Assert;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * {@link Consumer} implementation that wraps a target Consumer accepting lists, so that
+ * it can be applied to a {@link Flux} of single items. Input items are buffered into
+ * batches of at most {@code size} items, or whatever has arrived after {@code timeout},
+ * whichever comes first, and the target is called once per batch.
+ *
+ * @author Dave Syer
+ *
+ * @param <T> element type of the target consumer input
+ */
+public class BatchingFluxConsumer<T> implements Consumer<Flux<T>> {
+
+	private final Consumer<List<T>> consumer;
+
+	private final int size;
+
+	private final Duration timeout;
+
+	public BatchingFluxConsumer(Consumer<List<T>> consumer) {
+		this(consumer, BatchingFluxFunction.DEFAULT_SIZE,
+				BatchingFluxFunction.DEFAULT_TIMEOUT);
+	}
+
+	public BatchingFluxConsumer(Consumer<List<T>> consumer, int size, Duration timeout) {
+		Assert.isTrue(size > 0, "Batch size must be positive");
+		Assert.notNull(timeout, "Batch timeout must not be null");
+		this.consumer = consumer;
+		this.size = size;
+		this.timeout = timeout;
+	}
+
+	public Consumer<List<T>> getTarget() {
+		return this.consumer;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public Duration getTimeout() {
+		return this.timeout;
+	}
+
+	@Override
+	public void accept(Flux<T> input) {
+		input.bufferTimeout(this.size, this.timeout)
+				.subscribe(batch -> this.consumer.accept(batch));
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.support;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.util.Assert;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * {@link Function} implementation that wraps a target Function accepting and returning
+ * lists, so that it can be applied to a {@link Flux} of single items. Input items are
+ * buffered into batches of at most {@code size} items, or whatever has arrived after
+ * {@code timeout}, whichever comes first. The outputs are emitted in the same order as
+ * the inputs.
+ *
+ * @author Dave Syer
+ *
+ * @param <T> element type of the target function input
+ * @param <R> element type of the target function output
+ */
+public class BatchingFluxFunction<T, R> implements Function<Flux<T>, Flux<R>> {
+
+	public static final int DEFAULT_SIZE = 100;
+
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofMillis(100);
+
+	private final Function<List<T>, List<R>> function;
+
+	private final int size;
+
+	private final Duration timeout;
+
+	public BatchingFluxFunction(Function<List<T>, List<R>> function) {
+		this(function, DEFAULT_SIZE, DEFAULT_TIMEOUT);
+	}
+
+	public BatchingFluxFunction(Function<List<T>, List<R>> function, int size,
+			Duration timeout) {
+		Assert.isTrue(size > 0, "Batch size must be positive");
+		Assert.notNull(timeout, "Batch timeout must not be null");
+		this.function = function;
+		this.size = size;
+		this.timeout = timeout;
+	}
+
+	public Function<List<T>, List<R>> getTarget() {
+		return this.function;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public Duration getTimeout() {
+		return this.timeout;
+	}
+
+	@Override
+	public Flux<R> apply(Flux<T> input) {
+		return input.bufferTimeout(this.size, this.timeout)
+				.concatMapIterable(batch -> this.function.apply(batch));
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import org.springframework.util.StreamUtils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+/**
+ * Utilities for functions with binary input or output (<code>byte[]</code>,
+ * {@link ByteBuffer} or {@link InputStream}), so that raw bytes can be passed through
+ * without being serialized, and without copying them where it can be avoided.
+ *
+ * @author Dave Syer
+ */
+public abstract class BinaryUtils {
+
+	public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+	private BinaryUtils() {
+	}
+
+	/**
+	 * @param type the input or output type of a function
+	 * @return true if the type is one of the supported binary types
+	 */
+	public static boolean isBinary(Class<?> type) {
+		return type != null && (byte[].class.equals(type)
+				|| ByteBuffer.class.isAssignableFrom(type)
+				|| InputStream.class.isAssignableFrom(type));
+	}
+
+	/**
+	 * Read the whole of an input stream as a single value of a binary type. An
+	 * {@link InputStream} is passed through without reading it.
+	 *
+	 * @param input the input stream
+	 * @param type the binary type to create
+	 * @return a binary value
+	 * @throws IOException if the input cannot be read
+	 */
+	public static Object read(InputStream input, Class<?> type) throws IOException {
+		if (InputStream.class.isAssignableFrom(type)) {
+			return input;
+		}
+		return wrap(StreamUtils.copyToByteArray(input), type);
+	}
+
+	/**
+	 * Read an input stream in chunks of up to {@link #DEFAULT_CHUNK_SIZE} bytes. Each
+	 * chunk is read straight into a new array, which is then passed on without being
+	 * copied (except for a short last chunk if the type is <code>byte[]</code>). An
+	 * {@link InputStream} is passed through as a single value without reading it.
+	 *
+	 * @param input the input stream
+	 * @param type the binary type of the chunks
+	 * @return a flux of chunks
+	 */
+	public static Flux<Object> chunks(InputStream input, Class<?> type) {
+		return chunks(input, type, DEFAULT_CHUNK_SIZE);
+	}
+
+	public static Flux<Object> chunks(InputStream input, Class<?> type, int size) {
+		if (InputStream.class.isAssignableFrom(type)) {
+			return Flux.just(input);
+		}
+		return Flux.generate(() -> input,
+				(InputStream state, SynchronousSink<Object> sink) -> {
+					try {
+						byte[] chunk = new byte[size];
+						int count = fill(state, chunk);
+						if (count <= 0) {
+							sink.complete();
+						}
+						else if (ByteBuffer.class.isAssignableFrom(type)) {
+							sink.next(ByteBuffer.wrap(chunk, 0, count));
+						}
+						else {
+							sink.next(count == size ? chunk : Arrays.copyOf(chunk, count));
+						}
+					}
+					catch (IOException e) {
+						sink.error(e);
+					}
+					return state;
+				}, BinaryUtils::close);
+	}
+
+	/**
+	 * Convert bytes to a binary type without copying them.
+	 *
+	 * @param bytes some bytes
+	 * @param type the binary type to create
+	 * @return a binary value
+	 */
+	public static Object wrap(byte[] bytes, Class<?> type) {
+		if (ByteBuffer.class.isAssignableFrom(type)) {
+			return ByteBuffer.wrap(bytes);
+		}
+		if (InputStream.class.isAssignableFrom(type)) {
+			return new ByteArrayInputStream(bytes);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Convert a binary value to bytes. A buffer that wraps the whole of an array is not
+	 * copied.
+	 *
+	 * @param value a binary value
+	 * @return the bytes
+	 */
+	public static byte[] toByteArray(Object value) {
+		if (value instanceof ByteBuffer) {
+			ByteBuffer buffer = (ByteBuffer) value;
+			if (buffer.hasArray() && buffer.arrayOffset() == 0
+					&& buffer.position() == 0
+					&& buffer.remaining() == buffer.array().length) {
+				return buffer.array();
+			}
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.duplicate().get(bytes);
+			return bytes;
+		}
+		if (value instanceof InputStream) {
+			try {
+				return StreamUtils.copyToByteArray((InputStream) value);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot read input stream", e);
+			}
+			finally {
+				close((InputStream) value);
+			}
+		}
+		return (byte[]) value;
+	}
+
+	/**
+	 * Write a binary value to an output stream (which is not closed).
+	 *
+	 * @param value a binary value
+	 * @param output the output stream
+	 * @throws IOException if the output cannot be written
+	 */
+	public static void write(Object value, OutputStream output) throws IOException {
+		if (value instanceof ByteBuffer) {
+			ByteBuffer buffer = (ByteBuffer) value;
+			if (buffer.hasArray()) {
+				output.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+						buffer.remaining());
+			}
+			else {
+				Channels.newChannel(output).write(buffer.duplicate());
+			}
+		}
+		else if (value instanceof InputStream) {
+			try {
+				StreamUtils.copy((InputStream) value, output);
+			}
+			finally {
+				close((InputStream) value);
+			}
+		}
+		else {
+			output.write((byte[]) value);
+		}
+	}
+
+	private static int fill(InputStream input, byte[] chunk) throws IOException {
+		int count = 0;
+		while (count < chunk.length) {
+			int read = input.read(chunk, count, chunk.length - count);
+			if (read < 0) {
+				break;
+			}
+			count += read;
+		}
+		return count;
+	}
+
+	private static void close(InputStream input) {
+		try {
+			input.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+
+}
@@ -36,6 +36,10 @@ public class FluxConsumer<T> implements Consumer<Flux<T>> {
 		this.consumer = consumer;
 	}
 
+	public Consumer<T> getTarget() {
+		return this.consumer;
+	}
+
 	@Override
 	public void accept(Flux<T> input) {
 		input.subscribe(t -> consumer.accept(t));
@@ -37,6 +37,10 @@ public class FluxFunction<T, R> implements Function<Flux<T>, Flux<R>> {
 		this.function = function;
 	}
 
+	public Function<T, R> getTarget() {
+		return this.function;
+	}
+
 	@Override
 	public Flux<R> apply(Flux<T> input) {
 		return input.map(i -> this.function.apply(i));
@@ -48,6 +48,14 @@ public class FluxSupplier<T> implements Supplier<Flux<T>> {
 		this.period = period;
 	}
 
+	public Supplier<T> getTarget() {
+		return this.supplier;
+	}
+
+	public Duration getPeriod() {
+		return this.period;
+	}
+
 	@Override
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Flux<T> get() {
@@ -81,6 +81,55 @@ public abstract class FunctionUtils {
 				&& types[1].startsWith(FLUX_CLASS_NAME));
 	}
 
+	/**
+	 * Unwrap a function that was adapted to accept and return a {@link Flux}, so that a
+	 * single value can be processed without assembling a reactive pipeline.
+	 *
+	 * @param function a function, e.g. from a catalog
+	 * @return the plain target function, or null if there isn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T, R> Function<T, R> getScalarFunction(Function<?, ?> function) {
+		if (function instanceof FluxFunction) {
+			return ((FluxFunction<T, R>) function).getTarget();
+		}
+		if (function instanceof ParallelFluxFunction) {
+			return ((ParallelFluxFunction<T, R>) function).getTarget();
+		}
+		return null;
+	}
+
+	/**
+	 * Unwrap a supplier that was adapted to return a {@link Flux}. Only non-periodic
+	 * suppliers are unwrapped. N.B. the target may return a {@link java.util.stream.Stream}
+	 * which the caller should treat as multiple values.
+	 *
+	 * @param supplier a supplier, e.g. from a catalog
+	 * @return the plain target supplier, or null if there isn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Supplier<T> getScalarSupplier(Supplier<?> supplier) {
+		if (supplier instanceof FluxSupplier
+				&& ((FluxSupplier<?>) supplier).getPeriod() == null) {
+			return ((FluxSupplier<T>) supplier).getTarget();
+		}
+		return null;
+	}
+
+	/**
+	 * Unwrap a consumer that was adapted to accept a {@link Flux}.
+	 *
+	 * @param consumer a consumer, e.g. from a catalog
+	 * @return the plain target consumer, or null if there isn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Consumer<T> getScalarConsumer(Consumer<?> consumer) {
+		if (consumer instanceof FluxConsumer) {
+			return ((FluxConsumer<T>) consumer).getTarget();
+		}
+		return null;
+	}
+
 	private static String[] getParameterizedTypeNames(Object source,
 			Class<?> interfaceClass) {
 		Type[] genericInterfaces = source.getClass().getGenericInterfaces();
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.support;
+
+import java.util.function.Function;
+
+import org.springframework.util.Assert;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * {@link Function} implementation that wraps a target Function so that it is applied to
+ * the items of a {@link Flux} on several rails of a (bounded, CPU-sized) scheduler,
+ * instead of on the thread that emits the input. Useful for CPU-bound functions. If the
+ * output is ordered, the items are emitted in the same order as the input, otherwise
+ * they are emitted as soon as they are ready. In both modes a null result from the
+ * target is an error (as it is for a {@link FluxFunction}).
+ *
+ * @author Dave Syer
+ *
+ * @param <T> input type of target function
+ * @param <R> output type of target function
+ */
+public class ParallelFluxFunction<T, R> implements Function<Flux<T>, Flux<R>> {
+
+	public static final int DEFAULT_PREFETCH = 256;
+
+	private final Function<T, R> function;
+
+	private final int parallelism;
+
+	private final int prefetch;
+
+	private final boolean ordered;
+
+	private final Scheduler scheduler;
+
+	public ParallelFluxFunction(Function<T, R> function) {
+		this(function, Runtime.getRuntime().availableProcessors(), DEFAULT_PREFETCH,
+				true);
+	}
+
+	public ParallelFluxFunction(Function<T, R> function, int parallelism, int prefetch,
+			boolean ordered) {
+		this(function, parallelism, prefetch, ordered, Schedulers.parallel());
+	}
+
+	public ParallelFluxFunction(Function<T, R> function, int parallelism, int prefetch,
+			boolean ordered, Scheduler scheduler) {
+		Assert.isTrue(parallelism > 0, "Parallelism must be positive");
+		Assert.isTrue(prefetch > 0, "Prefetch must be positive");
+		Assert.notNull(scheduler, "Scheduler must not be null");
+		this.function = function;
+		this.parallelism = parallelism;
+		this.prefetch = prefetch;
+		this.ordered = ordered;
+		this.scheduler = scheduler;
+	}
+
+	public Function<T, R> getTarget() {
+		return this.function;
+	}
+
+	@Override
+	public Flux<R> apply(Flux<T> input) {
+		if (this.ordered) {
+			// Results are reassembled in the order the inputs were received
+			// A null result is an error, the same as in unordered mode
+			return input.flatMapSequential(
+					item -> Mono.just(item).map(this.function)
+							.subscribeOn(this.scheduler),
+					this.parallelism, this.prefetch);
+		}
+		return input.parallel(this.parallelism, this.prefetch)
+				.runOn(this.scheduler, this.prefetch).map(this.function).sequential();
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.support;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ParallelFluxFunctionTests {
+
+	@Test
+	public void ordered() {
+		ParallelFluxFunction<Integer, Integer> function = new ParallelFluxFunction<>(
+				value -> value * 2, 4, 16, true);
+		assertThat(function.apply(Flux.range(0, 100)).collectList().block())
+				.isEqualTo(Flux.range(0, 100).map(value -> value * 2).collectList()
+						.block());
+	}
+
+	@Test
+	public void unordered() {
+		ParallelFluxFunction<Integer, Integer> function = new ParallelFluxFunction<>(
+				value -> value * 2, 4, 16, false);
+		List<Integer> result = function.apply(Flux.range(0, 100)).collectList().block();
+		assertThat(result).hasSize(100);
+		assertThat(result).containsOnlyElementsOf(
+				Flux.range(0, 100).map(value -> value * 2).collectList().block());
+	}
+
+	@Test
+	public void orderedNullResult() {
+		ParallelFluxFunction<Integer, Integer> function = new ParallelFluxFunction<>(
+				value -> value == 3 ? null : value, 4, 16, true);
+		assertThatThrownBy(() -> function.apply(Flux.range(0, 10)).collectList().block())
+				.isInstanceOf(NullPointerException.class);
+	}
+
+	@Test
+	public void unorderedNullResult() {
+		ParallelFluxFunction<Integer, Integer> function = new ParallelFluxFunction<>(
+				value -> value == 3 ? null : value, 4, 16, false);
+		assertThatThrownBy(() -> function.apply(Flux.range(0, 10)).collectList().block())
+				.isInstanceOf(NullPointerException.class);
+	}
+}
@@ -15,7 +15,9 @@
  */
 package org.springframework.cloud.function.deployer;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -66,6 +68,40 @@ public class FunctionExtractingFunctionCatalog
 		return (Supplier<T>) lookup(name, "lookupSupplier");
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public Set<String> getNames(Class<?> type) {
+		Set<String> names = new HashSet<>();
+		for (String id : deployed) {
+			Object catalog = deployer.getBean(id, FunctionCatalog.class);
+			if (catalog == null) {
+				continue;
+			}
+			try {
+				MethodInvoker invoker = new MethodInvoker();
+				invoker.setTargetObject(catalog);
+				invoker.setTargetMethod("getNames");
+				invoker.setArguments(new Object[] { type });
+				try {
+					invoker.prepare();
+				}
+				catch (NoSuchMethodException e) {
+					return null;
+				}
+				Set<String> result = (Set<String>) invoker.invoke();
+				if (result == null) {
+					// One of the deployed catalogs cannot be listed
+					return null;
+				}
+				names.addAll(result);
+			}
+			catch (Exception e) {
+				throw new IllegalStateException("Cannot extract catalog", e);
+			}
+		}
+		return names;
+	}
+
 	@Override
 	public boolean isMessage(String name) {
 		return (Boolean) inspect(name, "isMessage");
@@ -101,6 +137,26 @@ public class FunctionExtractingFunctionCatalog
 		return (String) inspect(function, "getName");
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public Map<String, String> getProperties(String name) {
+		// Every deployed inspector returns a map (empty if it does not know the
+		// function), so they all have to be asked
+		Map<String, String> properties = new HashMap<>();
+		for (String id : deployed) {
+			Object inspector = deployer.getBean(id, FunctionInspector.class);
+			if (inspector == null) {
+				continue;
+			}
+			Map<String, String> result = (Map<String, String>) call(inspector,
+					"getProperties", name);
+			if (result != null) {
+				result.forEach(properties::putIfAbsent);
+			}
+		}
+		return properties;
+	}
+
 	public String deploy(AppDeploymentRequest request) {
 		String id = deployer.deploy(request);
 		deployed.add(id);
@@ -132,22 +188,26 @@ public class FunctionExtractingFunctionCatalog
 			if (catalog == null) {
 				continue;
 			}
-			try {
-				MethodInvoker invoker = new MethodInvoker();
-				invoker.setTargetObject(catalog);
-				invoker.setTargetMethod(method);
-				invoker.setArguments(new Object[] { arg });
-				invoker.prepare();
-				Object result = invoker.invoke();
-				if (result != null) {
-					return result;
-				}
-			}
-			catch (Exception e) {
-				throw new IllegalStateException("Cannot extract catalog", e);
+			Object result = call(catalog, method, arg);
+			if (result != null) {
+				return result;
 			}
 		}
 		return null;
 	}
 
+	private Object call(Object target, String method, Object arg) {
+		try {
+			MethodInvoker invoker = new MethodInvoker();
+			invoker.setTargetObject(target);
+			invoker.setTargetMethod(method);
+			invoker.setArguments(new Object[] { arg });
+			invoker.prepare();
+			return invoker.invoke();
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot extract catalog", e);
+		}
+	}
+
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+
+/**
+ * A {@link MessageConverter} that remembers which of the converters in a
+ * {@link CompositeMessageConverter} last converted a message with a given content type to
+ * a given class, and tries that one first next time, instead of asking all of them in
+ * turn for every message.
+ *
+ * @author Dave Syer
+ *
+ */
+class CachingMessageConverter implements MessageConverter {
+
+	private static final Object NO_CONTENT_TYPE = new Object();
+
+	private final MessageConverter delegate;
+
+	private final List<MessageConverter> converters;
+
+	private final Map<Class<?>, Map<Object, MessageConverter>> cache;
+
+	public CachingMessageConverter(MessageConverter delegate) {
+		this.delegate = delegate;
+		this.cache = new ConcurrentHashMap<>();
+		this.converters = delegate instanceof CompositeMessageConverter
+				? ((CompositeMessageConverter) delegate).getConverters()
+				: Collections.singletonList(delegate);
+	}
+
+	@Override
+	public Object fromMessage(Message<?> message, Class<?> targetClass) {
+		Map<Object, MessageConverter> types = this.cache.computeIfAbsent(targetClass,
+				type -> new ConcurrentHashMap<>());
+		Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+		Object key = contentType == null ? NO_CONTENT_TYPE : contentType;
+		MessageConverter cached = types.get(key);
+		if (cached != null) {
+			Object result = cached.fromMessage(message, targetClass);
+			if (result != null) {
+				return result;
+			}
+		}
+		for (MessageConverter converter : this.converters) {
+			if (converter == cached) {
+				continue;
+			}
+			Object result = converter.fromMessage(message, targetClass);
+			if (result != null) {
+				types.put(key, converter);
+				return result;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Message<?> toMessage(Object payload, MessageHeaders headers) {
+		return this.delegate.toMessage(payload, headers);
+	}
+
+}
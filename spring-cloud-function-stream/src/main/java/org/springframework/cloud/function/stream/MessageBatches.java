@@ -0,0 +1,374 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeTypeUtils;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Packs several outgoing values into one message, and unpacks them again on the way in,
+ * so that a function with lots of small outputs does not pay the broker overhead for
+ * each of them. A batch holds up to a maximum number of values, or of (uncompressed)
+ * bytes, or whatever was produced within a timeout, and can be compressed with GZIP.
+ * Each value is encoded as it would be by a binder (raw bytes, UTF-8 text, or JSON) and
+ * unpacked into a message with the corresponding content type, so the usual conversion
+ * applies to it. The headers of a value that is a message are packed with it and
+ * restored when it is unpacked (apart from the id, timestamp and content type). Text,
+ * numbers and booleans keep their type, any other header value is sent as a string.
+ * Headers that all the values in a batch share are also copied to the batch message, so
+ * that the binder can see them (e.g. to choose a partition).
+ *
+ * @author Dave Syer
+ *
+ */
+public class MessageBatches {
+
+	/**
+	 * Content type of a message that holds a batch.
+	 */
+	public static final String BATCH_CONTENT_TYPE = "application/x-spring-cloud-function-batch";
+
+	/**
+	 * Header for the compression of a batch (e.g. "gzip"), if any.
+	 */
+	public static final String BATCH_ENCODING = "function-batch-encoding";
+
+	public static final String GZIP = "gzip";
+
+	private static final byte BYTES = 0;
+
+	private static final byte TEXT = 1;
+
+	private static final byte JSON = 2;
+
+	private static final String[] CONTENT_TYPES = {
+			MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE, "text/plain;charset=UTF-8",
+			MimeTypeUtils.APPLICATION_JSON_VALUE };
+
+	private static final Set<String> TRANSIENT_HEADERS = new HashSet<>(
+			Arrays.asList(MessageHeaders.ID, MessageHeaders.TIMESTAMP,
+					MessageHeaders.CONTENT_TYPE));
+
+	private static final byte STRING_HEADER = 0;
+
+	private static final byte INTEGER_HEADER = 1;
+
+	private static final byte LONG_HEADER = 2;
+
+	private static final byte DOUBLE_HEADER = 3;
+
+	private static final byte BOOLEAN_HEADER = 4;
+
+	private final ObjectMapper mapper;
+
+	private int size = 100;
+
+	private int bytes = 64 * 1024;
+
+	private Duration timeout = Duration.ofMillis(100);
+
+	private String compression;
+
+	/**
+	 * @param mapper the object mapper used to encode values that are neither bytes nor
+	 * text
+	 */
+	public MessageBatches(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @param size the maximum number of values in a batch
+	 */
+	public void setSize(int size) {
+		Assert.isTrue(size > 0, "Batch size must be positive");
+		this.size = size;
+	}
+
+	/**
+	 * @param bytes the maximum number of bytes in a batch before it is compressed (a
+	 * single value that is larger is sent in a batch of its own)
+	 */
+	public void setBytes(int bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @param timeout the maximum time to wait for a batch to fill up
+	 */
+	public void setTimeout(Duration timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param compression the compression for batches ("gzip" or null for none)
+	 */
+	public void setCompression(String compression) {
+		Assert.isTrue(compression == null || GZIP.equals(compression),
+				"Unsupported compression: " + compression);
+		this.compression = compression;
+	}
+
+	/**
+	 * @param values some outgoing values (payloads or messages)
+	 * @return messages that each hold a batch of the values
+	 */
+	public Flux<Message<byte[]>> pack(Flux<?> values) {
+		return values.map(this::encode).bufferTimeout(this.size, this.timeout)
+				.concatMapIterable(this::messages);
+	}
+
+	/**
+	 * @param message an incoming message
+	 * @return the messages in the batch if it is one, otherwise just the message
+	 */
+	public static List<Message<?>> unpack(Message<?> message) {
+		if (!isBatch(message)) {
+			return Collections.singletonList(message);
+		}
+		List<Message<?>> messages = new ArrayList<>();
+		try (DataInputStream input = new DataInputStream(open(message))) {
+			int type;
+			while ((type = input.read()) >= 0) {
+				Map<String, Object> headers = readHeaders(input);
+				byte[] value = new byte[input.readInt()];
+				input.readFully(value);
+				MessageBuilder<?> builder = type == TEXT
+						? MessageBuilder
+								.withPayload(new String(value, StandardCharsets.UTF_8))
+						: MessageBuilder.withPayload(value);
+				messages.add(builder.copyHeaders(message.getHeaders())
+						.removeHeader(BATCH_ENCODING).copyHeaders(headers)
+						.setHeader(MessageHeaders.CONTENT_TYPE, CONTENT_TYPES[type])
+						.build());
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot unpack batch", e);
+		}
+		return messages;
+	}
+
+	private static boolean isBatch(Message<?> message) {
+		Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+		return contentType != null && message.getPayload() instanceof byte[]
+				&& contentType.toString().startsWith(BATCH_CONTENT_TYPE);
+	}
+
+	private static InputStream open(Message<?> message) throws IOException {
+		InputStream input = new ByteArrayInputStream((byte[]) message.getPayload());
+		if (GZIP.equals(message.getHeaders().get(BATCH_ENCODING))) {
+			input = new GZIPInputStream(input);
+		}
+		return input;
+	}
+
+	private static Map<String, Object> readHeaders(DataInputStream input)
+			throws IOException {
+		int count = input.readInt();
+		Map<String, Object> headers = new LinkedHashMap<>(count);
+		for (int i = 0; i < count; i++) {
+			String name = readText(input);
+			byte type = input.readByte();
+			switch (type) {
+			case INTEGER_HEADER:
+				headers.put(name, input.readInt());
+				break;
+			case LONG_HEADER:
+				headers.put(name, input.readLong());
+				break;
+			case DOUBLE_HEADER:
+				headers.put(name, input.readDouble());
+				break;
+			case BOOLEAN_HEADER:
+				headers.put(name, input.readBoolean());
+				break;
+			default:
+				headers.put(name, readText(input));
+			}
+		}
+		return headers;
+	}
+
+	private static String readText(DataInputStream input) throws IOException {
+		byte[] text = new byte[input.readInt()];
+		input.readFully(text);
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	private static void writeHeaders(DataOutputStream output,
+			Map<String, Object> headers) throws IOException {
+		output.writeInt(headers.size());
+		for (Map.Entry<String, Object> header : headers.entrySet()) {
+			writeText(output, header.getKey());
+			Object value = header.getValue();
+			if (value instanceof Integer) {
+				output.writeByte(INTEGER_HEADER);
+				output.writeInt((Integer) value);
+			}
+			else if (value instanceof Long) {
+				output.writeByte(LONG_HEADER);
+				output.writeLong((Long) value);
+			}
+			else if (value instanceof Double) {
+				output.writeByte(DOUBLE_HEADER);
+				output.writeDouble((Double) value);
+			}
+			else if (value instanceof Boolean) {
+				output.writeByte(BOOLEAN_HEADER);
+				output.writeBoolean((Boolean) value);
+			}
+			else {
+				output.writeByte(STRING_HEADER);
+				writeText(output, value.toString());
+			}
+		}
+	}
+
+	private static void writeText(DataOutputStream output, String value)
+			throws IOException {
+		byte[] text = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(text.length);
+		output.write(text);
+	}
+
+	private Element encode(Object value) {
+		Map<String, Object> headers = Collections.emptyMap();
+		if (value instanceof Message) {
+			Message<?> message = (Message<?>) value;
+			headers = new LinkedHashMap<>(message.getHeaders());
+			headers.keySet().removeAll(TRANSIENT_HEADERS);
+			value = message.getPayload();
+		}
+		if (value instanceof byte[]) {
+			return new Element(BYTES, headers, (byte[]) value);
+		}
+		if (value instanceof String) {
+			return new Element(TEXT, headers,
+					((String) value).getBytes(StandardCharsets.UTF_8));
+		}
+		try {
+			return new Element(JSON, headers, this.mapper.writeValueAsBytes(value));
+		}
+		catch (JsonProcessingException e) {
+			throw new IllegalStateException("Cannot encode value for batch", e);
+		}
+	}
+
+	private List<Message<byte[]>> messages(List<Element> elements) {
+		if (elements.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Message<byte[]>> messages = new ArrayList<>();
+		int start = 0;
+		int total = 0;
+		for (int i = 0; i < elements.size(); i++) {
+			int length = elements.get(i).bytes.length;
+			if (i > start && total + length > this.bytes) {
+				messages.add(message(elements.subList(start, i)));
+				start = i;
+				total = 0;
+			}
+			total += length;
+		}
+		messages.add(message(elements.subList(start, elements.size())));
+		return messages;
+	}
+
+	private Message<byte[]> message(List<Element> elements) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try {
+			OutputStream stream = GZIP.equals(this.compression)
+					? new GZIPOutputStream(buffer) : buffer;
+			try (DataOutputStream output = new DataOutputStream(stream)) {
+				for (Element element : elements) {
+					output.writeByte(element.type);
+					writeHeaders(output, element.headers);
+					output.writeInt(element.bytes.length);
+					output.write(element.bytes);
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot pack batch", e);
+		}
+		MessageBuilder<byte[]> builder = MessageBuilder.withPayload(buffer.toByteArray())
+				.copyHeaders(shared(elements))
+				.setHeader(MessageHeaders.CONTENT_TYPE, BATCH_CONTENT_TYPE);
+		if (this.compression != null) {
+			builder.setHeader(BATCH_ENCODING, this.compression);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * The headers that all the elements have, with the same values.
+	 */
+	private Map<String, Object> shared(List<Element> elements) {
+		Map<String, Object> shared = new LinkedHashMap<>(elements.get(0).headers);
+		for (Element element : elements.subList(1, elements.size())) {
+			shared.entrySet().removeIf(header -> !header.getValue()
+					.equals(element.headers.get(header.getKey())));
+		}
+		return shared;
+	}
+
+	private static final class Element {
+
+		private final byte type;
+
+		private final Map<String, Object> headers;
+
+		private final byte[] bytes;
+
+		private Element(byte type, Map<String, Object> headers, byte[] bytes) {
+			this.type = type;
+			this.headers = headers;
+			this.bytes = bytes;
+		}
+
+	}
+
+}
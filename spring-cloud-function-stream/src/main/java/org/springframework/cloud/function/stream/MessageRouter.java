@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.support.BinaryUtils;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+
+/**
+ * Chooses the function (or consumer) that an incoming message is sent to, when there is
+ * more than one candidate. A message names its function explicitly in the routing header
+ * (if there is one). Otherwise the first candidate that can convert the payload is
+ * chosen, and remembered for the content type (just the type and subtype) and payload
+ * class of the message, so the trial conversions are only needed for the first message of
+ * each kind. If the remembered function cannot convert a message after all, the trial
+ * conversions are made again. At most {@value #MAX_ROUTES} kinds of message are
+ * remembered (the least recently used are forgotten first).
+ *
+ * @author Dave Syer
+ *
+ */
+class MessageRouter {
+
+	public static final int MAX_ROUTES = 256;
+
+	private static final String NO_CONTENT_TYPE = "";
+
+	private final FunctionInspector functionInspector;
+
+	private final String defaultEndpoint;
+
+	private final String[] names;
+
+	private final Set<String> candidates;
+
+	private final Map<String, String> cache = Collections
+			.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+					return size() > MAX_ROUTES;
+				}
+			});
+
+	private String header;
+
+	private MessageConverter converter;
+
+	public MessageRouter(FunctionInspector functionInspector, String defaultEndpoint,
+			String... names) {
+		this.functionInspector = functionInspector;
+		this.defaultEndpoint = defaultEndpoint;
+		this.names = names;
+		this.candidates = new HashSet<>(Arrays.asList(names));
+	}
+
+	/**
+	 * @param header the name of a message header that holds the name of the function
+	 * (null to only route by payload)
+	 */
+	public void setHeader(String header) {
+		this.header = header;
+	}
+
+	public void setConverter(MessageConverter converter) {
+		this.converter = converter;
+	}
+
+	/**
+	 * @param message an incoming message
+	 * @return the message together with the name of the function it is for (null if
+	 * there is no function that can accept it)
+	 */
+	public Routed route(Message<?> message) {
+		if (this.defaultEndpoint != null) {
+			return new Routed(this.defaultEndpoint, message, null);
+		}
+		MessageHeaders headers = message.getHeaders();
+		if (this.header != null) {
+			Object name = headers.get(this.header);
+			if (name != null && this.candidates.contains(name.toString())) {
+				return new Routed(name.toString(), message, null);
+			}
+		}
+		String key = key(message);
+		String cached = this.cache.get(key);
+		if (cached != null) {
+			Routed routed = convert(cached, message);
+			if (routed != null) {
+				return routed;
+			}
+		}
+		for (String candidate : this.names) {
+			if (candidate.equals(cached)) {
+				continue;
+			}
+			Routed routed = convert(candidate, message);
+			if (routed != null) {
+				this.cache.put(key, candidate);
+				return routed;
+			}
+		}
+		return new Routed(null, message, null);
+	}
+
+	/**
+	 * @return the message routed to the function, or null if the function cannot accept
+	 * it
+	 */
+	private Routed convert(String name, Message<?> message) {
+		Class<?> inputType = this.functionInspector.getInputType(name);
+		if (BinaryUtils.isBinary(inputType) && message.getPayload() instanceof byte[]) {
+			return new Routed(name, message, null);
+		}
+		Object payload = this.converter.fromMessage(message, inputType);
+		if (payload != null) {
+			// Keep the converted payload so it does not have to be converted again
+			return new Routed(name, message, payload);
+		}
+		return null;
+	}
+
+	private String key(Message<?> message) {
+		Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+		String type = NO_CONTENT_TYPE;
+		if (contentType != null) {
+			try {
+				MimeType mimeType = contentType instanceof MimeType
+						? (MimeType) contentType
+						: MimeType.valueOf(contentType.toString());
+				// Parameters (e.g. charset) do not change the route
+				type = mimeType.getType() + "/" + mimeType.getSubtype();
+			}
+			catch (InvalidMimeTypeException e) {
+				type = contentType.toString();
+			}
+		}
+		return message.getPayload().getClass().getName() + " " + type;
+	}
+
+	/**
+	 * A message and the name of the function it is for.
+	 */
+	static final class Routed {
+
+		private final String name;
+
+		private final Message<?> message;
+
+		private final Object payload;
+
+		private Routed(String name, Message<?> message, Object payload) {
+			this.name = name;
+			this.message = message;
+			this.payload = payload;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public Message<?> getMessage() {
+			return this.message;
+		}
+
+		/**
+		 * @return the payload already converted to the input type of the function, or
+		 * null if it has not been converted
+		 */
+		public Object getPayload() {
+			return this.payload;
+		}
+
+	}
+
+}
@@ -21,11 +21,15 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.time.Duration;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -47,6 +51,7 @@ import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.ConfigurationCondition;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.util.StringUtils;
 
 /**
  * @author Mark Fisher
@@ -61,12 +66,19 @@ public class StreamConfiguration {
 	@EnableBinding(Source.class)
 	protected static class SupplierConfiguration {
 
+		@Autowired
+		private StreamConfigurationProperties properties;
+
 		@Bean
 		public SupplierInvokingMessageProducer<Object> supplierInvoker(
-				ListableBeanFactory beanFactory, FunctionCatalog registry) {
+				ListableBeanFactory beanFactory, FunctionCatalog registry,
+				ObjectProvider<ObjectMapper> mapper) {
 			String[] names = beanFactory.getBeanNamesForType(Supplier.class, false,
 					false);
-			return new SupplierInvokingMessageProducer<Object>(registry, names);
+			SupplierInvokingMessageProducer<Object> producer = new SupplierInvokingMessageProducer<Object>(
+					registry, names);
+			producer.setBatches(batches(properties, mapper));
+			return producer;
 		}
 	}
 
@@ -81,11 +93,19 @@ public class StreamConfiguration {
 		public StreamListeningFunctionInvoker functionInvoker(
 				ListableBeanFactory beanFactory, FunctionCatalog registry,
 				FunctionInspector functionInspector,
-				@Lazy CompositeMessageConverterFactory compositeMessageConverterFactory) {
+				@Lazy CompositeMessageConverterFactory compositeMessageConverterFactory,
+				ObjectProvider<ObjectMapper> mapper) {
 			String[] names = beanFactory.getBeanNamesForType(Function.class, false,
 					false);
-			return new StreamListeningFunctionInvoker(registry, functionInspector,
-					compositeMessageConverterFactory, properties.getEndpoint(), names);
+			StreamListeningFunctionInvoker invoker = new StreamListeningFunctionInvoker(
+					registry, functionInspector, compositeMessageConverterFactory,
+					properties.getEndpoint(), names);
+			invoker.setRoutingHeader(properties.getRoutingHeader());
+			invoker.setRails(properties.getRails());
+			invoker.setRailQueue(properties.getRailQueue());
+			invoker.setPartitionKey(properties.getPartitionKey());
+			invoker.setBatches(batches(properties, mapper));
+			return invoker;
 		}
 	}
 
@@ -103,9 +123,28 @@ public class StreamConfiguration {
 				@Lazy CompositeMessageConverterFactory compositeMessageConverterFactory) {
 			String[] names = beanFactory.getBeanNamesForType(Consumer.class, false,
 					false);
-			return new StreamListeningConsumerInvoker(registry, functionInspector,
-					compositeMessageConverterFactory, properties.getEndpoint(), names);
+			StreamListeningConsumerInvoker invoker = new StreamListeningConsumerInvoker(
+					registry, functionInspector, compositeMessageConverterFactory,
+					properties.getEndpoint(), names);
+			invoker.setRoutingHeader(properties.getRoutingHeader());
+			return invoker;
+		}
+	}
+
+	private static MessageBatches batches(StreamConfigurationProperties properties,
+			ObjectProvider<ObjectMapper> mapper) {
+		if (properties.getOutputBatchSize() <= 1) {
+			return null;
 		}
+		ObjectMapper objectMapper = mapper.getIfAvailable();
+		MessageBatches batches = new MessageBatches(
+				objectMapper != null ? objectMapper : new ObjectMapper());
+		batches.setSize(properties.getOutputBatchSize());
+		batches.setBytes(properties.getOutputBatchBytes());
+		batches.setTimeout(Duration.ofMillis(properties.getOutputBatchTimeout()));
+		batches.setCompression(StringUtils.hasText(properties.getOutputCompression())
+				? properties.getOutputCompression() : null);
+		return batches;
 	}
 
 	@Conditional(SupplierCondition.class)
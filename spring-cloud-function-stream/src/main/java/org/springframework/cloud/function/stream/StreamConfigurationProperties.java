@@ -32,6 +32,56 @@ public class StreamConfigurationProperties {
 	 */
 	private long interval = 0L;
 
+	/**
+	 * Name of a message header that holds the name of the function (or consumer) to send
+	 * a message to, when there is more than one and no explicit endpoint. Messages
+	 * without it are routed by the first function that can convert their payload.
+	 */
+	private String routingHeader = "function";
+
+	/**
+	 * Number of rails that the messages for a function are spread over and processed on
+	 * in parallel. Default is 1, which means they are all processed in sequence. Only
+	 * applies to functions of single values, since a function of a Flux might keep state
+	 * across the whole stream.
+	 */
+	private int rails = 1;
+
+	/**
+	 * Number of messages that can be waiting for each rail.
+	 */
+	private int railQueue = 256;
+
+	/**
+	 * SpEL expression evaluated against each incoming message to get its partition key
+	 * (e.g. <code>headers['id']</code>). Messages with the same key are processed on the
+	 * same rail, in order. Messages without a key (including those for which the
+	 * expression is null) are spread evenly over the rails.
+	 */
+	private String partitionKey;
+
+	/**
+	 * Maximum number of outputs packed into one outgoing message. Default is 0, which
+	 * means each output is sent in a message of its own. Incoming batches are always
+	 * unpacked.
+	 */
+	private int outputBatchSize = 0;
+
+	/**
+	 * Maximum number of bytes (before compression) packed into one outgoing message.
+	 */
+	private int outputBatchBytes = 64 * 1024;
+
+	/**
+	 * Maximum time (in milliseconds) to wait for an outgoing batch to fill up.
+	 */
+	private long outputBatchTimeout = 100L;
+
+	/**
+	 * Compression for outgoing batches: "gzip", or empty for none.
+	 */
+	private String outputCompression;
+
 	public String getEndpoint() {
 		return endpoint;
 	}
@@ -40,6 +90,70 @@ public class StreamConfigurationProperties {
 		this.endpoint = endpoint;
 	}
 
+	public String getRoutingHeader() {
+		return routingHeader;
+	}
+
+	public void setRoutingHeader(String routingHeader) {
+		this.routingHeader = routingHeader;
+	}
+
+	public int getRails() {
+		return rails;
+	}
+
+	public void setRails(int rails) {
+		this.rails = rails;
+	}
+
+	public int getRailQueue() {
+		return railQueue;
+	}
+
+	public void setRailQueue(int railQueue) {
+		this.railQueue = railQueue;
+	}
+
+	public String getPartitionKey() {
+		return partitionKey;
+	}
+
+	public void setPartitionKey(String partitionKey) {
+		this.partitionKey = partitionKey;
+	}
+
+	public int getOutputBatchSize() {
+		return outputBatchSize;
+	}
+
+	public void setOutputBatchSize(int outputBatchSize) {
+		this.outputBatchSize = outputBatchSize;
+	}
+
+	public int getOutputBatchBytes() {
+		return outputBatchBytes;
+	}
+
+	public void setOutputBatchBytes(int outputBatchBytes) {
+		this.outputBatchBytes = outputBatchBytes;
+	}
+
+	public long getOutputBatchTimeout() {
+		return outputBatchTimeout;
+	}
+
+	public void setOutputBatchTimeout(long outputBatchTimeout) {
+		this.outputBatchTimeout = outputBatchTimeout;
+	}
+
+	public String getOutputCompression() {
+		return outputCompression;
+	}
+
+	public void setOutputCompression(String outputCompression) {
+		this.outputCompression = outputCompression;
+	}
+
 	public long getInterval() {
 		return interval;
 	}
@@ -16,11 +16,15 @@
 
 package org.springframework.cloud.function.stream;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.cloud.function.context.FunctionInspector;
 import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.stream.MessageRouter.Routed;
+import org.springframework.cloud.function.support.BinaryUtils;
 import org.springframework.cloud.stream.annotation.Input;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.converter.CompositeMessageConverterFactory;
@@ -44,9 +48,9 @@ public class StreamListeningConsumerInvoker implements SmartInitializingSingleto
 
 	private final FunctionCatalog functionCatalog;
 
-	private final String defaultEndpoint;
+	private final MessageRouter router;
 
-	private final String[] names;
+	private final Map<String, Function<Routed, Object>> inputs;
 
 	public StreamListeningConsumerInvoker(FunctionCatalog functionCatalog,
 			FunctionInspector functionInspector,
@@ -55,50 +59,62 @@ public class StreamListeningConsumerInvoker implements SmartInitializingSingleto
 		this.functionCatalog = functionCatalog;
 		this.functionInspector = functionInspector;
 		this.converterFactory = converterFactory;
-		this.defaultEndpoint = defaultEndpoint;
-		this.names = names;
+		this.router = new MessageRouter(functionInspector, defaultEndpoint, names);
+		this.inputs = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @param routingHeader the name of a message header that holds the name of the
+	 * consumer to send the message to
+	 */
+	public void setRoutingHeader(String routingHeader) {
+		this.router.setHeader(routingHeader);
 	}
 
 	@Override
 	public void afterSingletonsInstantiated() {
-		this.converter = this.converterFactory.getMessageConverterForAllRegistered();
+		this.converter = new CachingMessageConverter(
+				this.converterFactory.getMessageConverterForAllRegistered());
+		this.router.setConverter(this.converter);
 	}
 
 	@StreamListener
 	public void handle(@Input(Sink.INPUT) Flux<Message<?>> input) {
-		input.groupBy(this::select)
+		input.flatMapIterable(MessageBatches::unpack).map(router::route)
+				.groupBy(Routed::getName)
 				.filter(group -> functionCatalog.lookupConsumer(group.key()) != null)
 				.subscribe(group -> process(group.key(), group));
 	}
 
-	private void process(String name, Flux<Message<?>> flux) {
-		functionCatalog.lookupConsumer(name)
-				.accept(flux.map(message -> convertInput(name).apply(message)));
-	}
-
-	private String select(Message<?> input) {
-		String name = defaultEndpoint;
-		if (name == null) {
-			for (String candidate : names) {
-				Class<?> inputType = functionInspector.getInputType(candidate);
-				if (this.converter.fromMessage(input, inputType) != null) {
-					name = candidate;
-					break;
-				}
-			}
-		}
-		return name;
+	private void process(String name, Flux<Routed> flux) {
+		Function<Routed, Object> input = inputs.computeIfAbsent(name,
+				this::convertInput);
+		functionCatalog.lookupConsumer(name).accept(flux.map(input));
 	}
 
-	private Function<Message<?>, Object> convertInput(String name) {
+	/**
+	 * Build the conversion for the input of a consumer once, so that only the payload
+	 * has to be inspected for each message.
+	 */
+	private Function<Routed, Object> convertInput(String name) {
 		Class<?> inputType = functionInspector.getInputType(name);
-		return m -> {
-			if (Message.class.isAssignableFrom(inputType)) {
-				return m;
-			}
-			else if (inputType.isAssignableFrom(m.getPayload().getClass())) {
+		if (Message.class.isAssignableFrom(inputType)) {
+			return Routed::getMessage;
+		}
+		boolean binary = BinaryUtils.isBinary(inputType);
+		return routed -> {
+			Message<?> m = routed.getMessage();
+			if (inputType.isAssignableFrom(m.getPayload().getClass())) {
 				return m.getPayload();
 			}
+			else if (routed.getPayload() != null) {
+				// Already converted when the message was routed
+				return routed.getPayload();
+			}
+			else if (binary && m.getPayload() instanceof byte[]) {
+				// Raw bytes can be passed on without conversion (or copying)
+				return BinaryUtils.wrap((byte[]) m.getPayload(), inputType);
+			}
 			else {
 				return this.converter.fromMessage(m, inputType);
 			}
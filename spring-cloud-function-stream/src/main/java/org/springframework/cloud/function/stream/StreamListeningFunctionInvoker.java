@@ -16,27 +16,44 @@
 
 package org.springframework.cloud.function.stream;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.cloud.function.context.FunctionInspector;
 import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.stream.MessageRouter.Routed;
+import org.springframework.cloud.function.support.BatchingFluxFunction;
+import org.springframework.cloud.function.support.BinaryUtils;
 import org.springframework.cloud.stream.annotation.Input;
 import org.springframework.cloud.stream.annotation.Output;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.converter.CompositeMessageConverterFactory;
 import org.springframework.cloud.stream.messaging.Processor;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.support.MessageBuilder;
 
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * @author Mark Fisher
  * @author Marius Bogoevici
  */
-public class StreamListeningFunctionInvoker implements SmartInitializingSingleton {
+public class StreamListeningFunctionInvoker
+		implements SmartInitializingSingleton, DisposableBean {
 
 	private final FunctionInspector functionInspector;
 
@@ -46,9 +63,21 @@ public class StreamListeningFunctionInvoker implements SmartInitializingSingleto
 
 	private MessageConverter converter;
 
-	private final String defaultEndpoint;
+	private final MessageRouter router;
 
-	private final String[] names;
+	private final Map<String, Function<Routed, Object>> inputs;
+
+	private int rails = 1;
+
+	private int railQueue = 256;
+
+	private Expression partitionKey;
+
+	private Scheduler scheduler;
+
+	private MessageBatches batches;
+
+	private final AtomicInteger next = new AtomicInteger();
 
 	public StreamListeningFunctionInvoker(FunctionCatalog functionCatalog,
 			FunctionInspector functionInspector,
@@ -57,59 +86,195 @@ public class StreamListeningFunctionInvoker implements SmartInitializingSingleto
 		this.functionCatalog = functionCatalog;
 		this.functionInspector = functionInspector;
 		this.converterFactory = converterFactory;
-		this.defaultEndpoint = defaultEndpoint;
-		this.names = names;
+		this.router = new MessageRouter(functionInspector, defaultEndpoint, names);
+		this.inputs = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @param routingHeader the name of a message header that holds the name of the
+	 * function to send the message to
+	 */
+	public void setRoutingHeader(String routingHeader) {
+		this.router.setHeader(routingHeader);
+	}
+
+	/**
+	 * @param rails the number of rails that the messages for each function are spread
+	 * over and processed on in parallel (1 to process them all in sequence). Only
+	 * functions of single values are spread over rails: a function of a {@link Flux}
+	 * might keep state across the whole stream, so its messages are always processed in
+	 * sequence.
+	 */
+	public void setRails(int rails) {
+		this.rails = rails;
+	}
+
+	/**
+	 * @param railQueue the number of messages that can wait for each rail
+	 */
+	public void setRailQueue(int railQueue) {
+		this.railQueue = railQueue;
+	}
+
+	/**
+	 * @param partitionKey a SpEL expression evaluated against each incoming message (e.g.
+	 * <code>headers['id']</code>); messages with the same key go to the same rail, so
+	 * they are processed in order, and messages without a key are spread evenly over the
+	 * rails
+	 */
+	public void setPartitionKey(String partitionKey) {
+		this.partitionKey = partitionKey == null ? null
+				: new SpelExpressionParser(new SpelParserConfiguration(
+						SpelCompilerMode.MIXED, getClass().getClassLoader()))
+								.parseExpression(partitionKey);
+	}
+
+	/**
+	 * @param batches packs the output into batches (null to send each output in a
+	 * message of its own)
+	 */
+	public void setBatches(MessageBatches batches) {
+		this.batches = batches;
 	}
 
 	@Override
 	public void afterSingletonsInstantiated() {
-		this.converter = this.converterFactory.getMessageConverterForAllRegistered();
+		this.converter = new CachingMessageConverter(
+				this.converterFactory.getMessageConverterForAllRegistered());
+		this.router.setConverter(this.converter);
+		if (this.rails > 1) {
+			this.scheduler = Schedulers.newParallel("stream-rail", this.rails, true);
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (this.scheduler != null) {
+			this.scheduler.dispose();
+		}
 	}
 
 	@StreamListener
 	@Output(Processor.OUTPUT)
 	public Flux<?> handle(@Input(Processor.INPUT) Flux<Message<?>> input) {
-		return input.groupBy(this::select)
+		Flux<?> output = input.flatMapIterable(MessageBatches::unpack)
+				.map(router::route).groupBy(Routed::getName)
 				.filter(group -> functionCatalog.lookupFunction(group.key()) != null)
-				.flatMap(group -> process(group.key(), group));
+				.flatMap(group -> rails > 1 && isStateless(group.key())
+						? parallel(group.key(), group) : process(group.key(), group));
+		return batches == null ? output : batches.pack(output);
 	}
 
-	private Flux<?> process(String name, Flux<Message<?>> flux) {
-		return (Flux<?>) functionCatalog.lookupFunction(name)
-				.apply(flux.map(message -> convertInput(name).apply(message)));
+	/**
+	 * Functions of single values (as opposed to functions of a {@link Flux}) cannot keep
+	 * any state between messages, so they can be applied once per rail.
+	 */
+	private boolean isStateless(String name) {
+		return !Flux.class.isAssignableFrom(functionInspector.getInputWrapper(name));
 	}
 
-	private String select(Message<?> input) {
-		String name = defaultEndpoint;
-		if (name == null) {
-			for (String candidate : names) {
-				Class<?> inputType = functionInspector.getInputType(candidate);
-				if (this.converter.fromMessage(input, inputType) != null) {
-					name = candidate;
-					break;
-				}
-			}
+	/**
+	 * Spread the messages for a function over the rails by partition key. Each rail is
+	 * processed serially on a single worker, so the order is kept for each key. The
+	 * function is applied to each rail separately.
+	 */
+	private Flux<?> parallel(String name, Flux<Routed> flux) {
+		return flux.groupBy(this::rail).flatMap(
+				rail -> process(name, rail.publishOn(scheduler, railQueue)), rails);
+	}
+
+	private int rail(Routed routed) {
+		Object key = partitionKey == null ? null
+				: partitionKey.getValue(routed.getMessage());
+		if (key == null) {
+			// No key so no order to keep
+			return (next.getAndIncrement() & Integer.MAX_VALUE) % rails;
 		}
-		return name;
+		return (key.hashCode() & Integer.MAX_VALUE) % rails;
 	}
 
-	private Function<Message<?>, Object> convertInput(String name) {
+	private Flux<?> process(String name, Flux<Routed> flux) {
+		Function<Routed, Object> input = inputs.computeIfAbsent(name,
+				this::convertInput);
+		Object function = functionCatalog.lookupFunction(name);
+		Class<?> outputType = functionInspector.getOutputType(name);
+		// The binders send byte[] payloads as they are
+		boolean binary = BinaryUtils.isBinary(outputType)
+				&& !byte[].class.equals(outputType);
+		if (function instanceof BatchingFluxFunction) {
+			@SuppressWarnings("unchecked")
+			BatchingFluxFunction<Object, Object> batching = (BatchingFluxFunction<Object, Object>) function;
+			return batch(batching, flux, input, binary);
+		}
+		@SuppressWarnings("unchecked")
+		Flux<?> result = ((Function<Flux<?>, Flux<?>>) function).apply(flux.map(input));
+		if (binary) {
+			return result.map(value -> value instanceof Message ? value
+					: BinaryUtils.toByteArray(value));
+		}
+		return result;
+	}
+
+	/**
+	 * Apply a function of lists to batches of messages, and send each output as a
+	 * separate message. If there is one output for each input, it carries the headers
+	 * of the input (apart from the content type).
+	 */
+	private Flux<?> batch(BatchingFluxFunction<Object, Object> function,
+			Flux<Routed> flux, Function<Routed, Object> input, boolean binary) {
+		return flux.bufferTimeout(function.getSize(), function.getTimeout())
+				.concatMapIterable(batch -> {
+					List<Object> inputs = new ArrayList<>(batch.size());
+					for (Routed routed : batch) {
+						inputs.add(input.apply(routed));
+					}
+					List<Object> outputs = function.getTarget().apply(inputs);
+					boolean paired = outputs.size() == batch.size();
+					List<Object> messages = new ArrayList<>(outputs.size());
+					for (int i = 0; i < outputs.size(); i++) {
+						Object value = outputs.get(i);
+						if (value instanceof Message) {
+							messages.add(value);
+							continue;
+						}
+						Object payload = binary ? BinaryUtils.toByteArray(value) : value;
+						messages.add(paired ? MessageBuilder.withPayload(payload)
+								.copyHeaders(batch.get(i).getMessage().getHeaders())
+								.removeHeader(MessageHeaders.CONTENT_TYPE).build()
+								: payload);
+					}
+					return messages;
+				});
+	}
+
+	/**
+	 * Build the conversion for the input of a function once, so that only the payload
+	 * has to be inspected for each message.
+	 */
+	private Function<Routed, Object> convertInput(String name) {
 		Class<?> inputType = functionInspector.getInputType(name);
-		return m -> {
-			if (functionInspector.isMessage(name)) {
-				return MessageBuilder.withPayload(convertPayload(name, inputType, m))
-						.copyHeaders(m.getHeaders()).build();
-			}
-			else {
-				return convertPayload(name, inputType, m);
-			}
-		};
-	}
-
-	private Object convertPayload(String name, Class<?> inputType, Message<?> m) {
+		boolean binary = BinaryUtils.isBinary(inputType);
+		if (functionInspector.isMessage(name)) {
+			return routed -> MessageBuilder
+					.withPayload(convertPayload(inputType, binary, routed))
+					.copyHeaders(routed.getMessage().getHeaders()).build();
+		}
+		return routed -> convertPayload(inputType, binary, routed);
+	}
+
+	private Object convertPayload(Class<?> inputType, boolean binary, Routed routed) {
+		Message<?> m = routed.getMessage();
 		if (inputType.isAssignableFrom(m.getPayload().getClass())) {
 			return m.getPayload();
 		}
+		else if (routed.getPayload() != null) {
+			// Already converted when the message was routed
+			return routed.getPayload();
+		}
+		else if (binary && m.getPayload() instanceof byte[]) {
+			// Raw bytes can be passed on without conversion (or copying)
+			return BinaryUtils.wrap((byte[]) m.getPayload(), inputType);
+		}
 		else {
 			return this.converter.fromMessage(m, inputType);
 		}
@@ -35,14 +35,28 @@ public class SupplierInvokingMessageProducer<T> extends MessageProducerSupport {
 
 	private final String[] names;
 
+	private MessageBatches batches;
+
 	public SupplierInvokingMessageProducer(FunctionCatalog registry, String... names) {
 		this.functionCatalog = registry;
 		this.names = names;
 		this.setOutputChannelName(Source.OUTPUT);
 	}
 
+	/**
+	 * @param batches packs the output into batches (null to send each output in a
+	 * message of its own)
+	 */
+	public void setBatches(MessageBatches batches) {
+		this.batches = batches;
+	}
+
 	@Override
 	protected void doStart() {
+		if (this.batches != null) {
+			this.batches.pack(supplier()).subscribe(this::sendMessage);
+			return;
+		}
 		supplier()
 				.subscribe(m -> this.sendMessage(MessageBuilder.withPayload(m).build()));
 	}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ */
+public class MessageBatchesTests {
+
+	private MessageBatches batches = new MessageBatches(new ObjectMapper());
+
+	@Test
+	public void roundTrip() {
+		batches.setCompression(MessageBatches.GZIP);
+		List<Message<byte[]>> packed = batches
+				.pack(Flux.just("foo", new byte[] { 1, 2 },
+						Collections.singletonMap("value", "bar")))
+				.collectList().block();
+		assertThat(packed).hasSize(1);
+		assertThat(packed.get(0).getHeaders().get(MessageBatches.BATCH_ENCODING))
+				.isEqualTo("gzip");
+		List<Message<?>> messages = MessageBatches.unpack(packed.get(0));
+		assertThat(messages).hasSize(3);
+		assertThat(messages.get(0).getPayload()).isEqualTo("foo");
+		assertThat((byte[]) messages.get(1).getPayload()).containsExactly(1, 2);
+		assertThat(new String((byte[]) messages.get(2).getPayload()))
+				.isEqualTo("{\"value\":\"bar\"}");
+		assertThat(messages.get(2).getHeaders().get(MessageHeaders.CONTENT_TYPE))
+				.isEqualTo("application/json");
+	}
+
+	@Test
+	public void splitByBytes() {
+		batches.setBytes(5);
+		List<Message<byte[]>> packed = batches.pack(Flux.just("foo", "bar", "spam"))
+				.collectList().block();
+		assertThat(packed).hasSize(3);
+		assertThat(MessageBatches.unpack(packed.get(2)).get(0).getPayload())
+				.isEqualTo("spam");
+	}
+
+	@Test
+	public void headersRestored() {
+		UUID uuid = UUID.randomUUID();
+		List<Message<byte[]>> packed = batches.pack(Flux.just(
+				MessageBuilder.withPayload("foo").setHeader("key", "one")
+						.setHeader("count", 3).setHeader("total", 4L)
+						.setHeader("uuid", uuid).setHeader("partition", 1).build(),
+				MessageBuilder.withPayload("bar").setHeader("key", "two")
+						.setHeader(MessageHeaders.CONTENT_TYPE, "text/plain")
+						.setHeader("partition", 1).build(),
+				"spam")).collectList().block();
+		assertThat(packed).hasSize(1);
+		List<Message<?>> messages = MessageBatches.unpack(packed.get(0));
+		MessageHeaders headers = messages.get(0).getHeaders();
+		assertThat(headers.get("key")).isEqualTo("one");
+		assertThat(headers.get("count")).isEqualTo(3);
+		assertThat(headers.get("total")).isEqualTo(4L);
+		assertThat(headers.get("uuid")).isEqualTo(uuid.toString());
+		assertThat(headers.get(MessageHeaders.CONTENT_TYPE))
+				.isEqualTo("text/plain;charset=UTF-8");
+		assertThat(messages.get(1).getHeaders().get("key")).isEqualTo("two");
+		assertThat(messages.get(2).getHeaders()).doesNotContainKey("key");
+		// Only the headers that all the values share go on the batch
+		assertThat(packed.get(0).getHeaders()).doesNotContainKey("key")
+				.doesNotContainKey("partition");
+		packed = batches.pack(Flux.just(
+				MessageBuilder.withPayload("foo").setHeader("partition", 1).build(),
+				MessageBuilder.withPayload("bar").setHeader("partition", 1).build()))
+				.collectList().block();
+		assertThat(packed.get(0).getHeaders().get("partition")).isEqualTo(1);
+	}
+
+	@Test
+	public void notBatch() {
+		Message<String> message = MessageBuilder.withPayload("foo").build();
+		assertThat(MessageBatches.unpack(message)).containsExactly(message);
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class MessageRouterTests {
+
+	private final AtomicInteger conversions = new AtomicInteger();
+
+	private MessageRouter router;
+
+	@Before
+	public void init() {
+		FunctionInspector inspector = mock(FunctionInspector.class);
+		doReturn(String.class).when(inspector).getInputType("words");
+		doReturn(Integer.class).when(inspector).getInputType("numbers");
+		router = new MessageRouter(inspector, null, "words", "numbers");
+		router.setConverter(new NumberOrWordConverter());
+	}
+
+	@Test
+	public void routeRememberedForTypeAndSubtype() {
+		assertThat(router.route(message("123", "text/plain;charset=UTF-8")).getName())
+				.isEqualTo("numbers");
+		assertThat(conversions.get()).isEqualTo(2);
+		MessageRouter.Routed routed = router.route(message("456", "text/plain"));
+		assertThat(routed.getName()).isEqualTo("numbers");
+		assertThat(routed.getPayload()).isEqualTo(456);
+		// Only the remembered function was tried
+		assertThat(conversions.get()).isEqualTo(3);
+	}
+
+	@Test
+	public void fallBackWhenRememberedRouteCannotConvert() {
+		assertThat(router.route(message("123", "text/plain")).getName())
+				.isEqualTo("numbers");
+		MessageRouter.Routed routed = router.route(message("foo", "text/plain"));
+		assertThat(routed.getName()).isEqualTo("words");
+		assertThat(routed.getPayload()).isEqualTo("foo");
+		assertThat(router.route(message("bar", "text/plain")).getName())
+				.isEqualTo("words");
+	}
+
+	private Message<String> message(String payload, String contentType) {
+		return MessageBuilder.withPayload(payload)
+				.setHeader(MessageHeaders.CONTENT_TYPE, contentType).build();
+	}
+
+	private class NumberOrWordConverter implements MessageConverter {
+
+		@Override
+		public Object fromMessage(Message<?> message, Class<?> targetClass) {
+			conversions.incrementAndGet();
+			String payload = (String) message.getPayload();
+			boolean number = payload.matches("[0-9]+");
+			if (Integer.class.equals(targetClass)) {
+				return number ? Integer.valueOf(payload) : null;
+			}
+			return number ? null : payload;
+		}
+
+		@Override
+		public Message<?> toMessage(Object payload, MessageHeaders headers) {
+			return null;
+		}
+
+	}
+
+}
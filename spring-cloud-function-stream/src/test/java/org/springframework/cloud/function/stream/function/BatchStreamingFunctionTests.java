@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream.function;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.function.context.FunctionRegistration;
+import org.springframework.cloud.stream.messaging.Processor;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.context.annotation.Bean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BatchStreamingFunctionTests.StreamingFunctionApplication.class)
+public class BatchStreamingFunctionTests {
+
+	@Autowired
+	Processor processor;
+
+	@Autowired
+	MessageCollector messageCollector;
+
+	@Test
+	public void headersPropagated() throws Exception {
+		processor.input().send(
+				MessageBuilder.withPayload("foo").setHeader("key", "one").build());
+		processor.input().send(
+				MessageBuilder.withPayload("bar").setHeader("key", "two").build());
+		Message<?> result = messageCollector.forChannel(processor.output()).poll(1000,
+				TimeUnit.MILLISECONDS);
+		assertThat(result.getPayload()).isEqualTo("FOO");
+		assertThat(result.getHeaders().get("key")).isEqualTo("one");
+		result = messageCollector.forChannel(processor.output()).poll(1000,
+				TimeUnit.MILLISECONDS);
+		assertThat(result.getPayload()).isEqualTo("BAR");
+		assertThat(result.getHeaders().get("key")).isEqualTo("two");
+	}
+
+	@SpringBootApplication
+	public static class StreamingFunctionApplication {
+
+		@Bean
+		public FunctionRegistration<Function<List<String>, List<String>>> uppercase() {
+			Map<String, String> properties = new HashMap<>();
+			properties.put("batch.enabled", "true");
+			properties.put("batch.timeout", "10");
+			return new FunctionRegistration<Function<List<String>, List<String>>>(
+					values -> values.stream().map(value -> value.toUpperCase())
+							.collect(Collectors.toList())).properties(properties);
+		}
+	}
+}
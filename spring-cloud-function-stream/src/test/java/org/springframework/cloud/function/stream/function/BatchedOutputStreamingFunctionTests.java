@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream.function;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.function.context.FunctionRegistration;
+import org.springframework.cloud.function.stream.MessageBatches;
+import org.springframework.cloud.stream.messaging.Processor;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.context.annotation.Bean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BatchedOutputStreamingFunctionTests.StreamingFunctionApplication.class, properties = "spring.cloud.function.stream.output-batch-size=2")
+public class BatchedOutputStreamingFunctionTests {
+
+	@Autowired
+	Processor processor;
+
+	@Autowired
+	MessageCollector messageCollector;
+
+	@Test
+	public void outputsPacked() throws Exception {
+		processor.input().send(
+				MessageBuilder.withPayload("foo").setHeader("key", "one").build());
+		processor.input().send(
+				MessageBuilder.withPayload("bar").setHeader("key", "two").build());
+		Message<?> result = messageCollector.forChannel(processor.output()).poll(1000,
+				TimeUnit.MILLISECONDS);
+		assertThat(result).isNotNull();
+		assertThat(result.getHeaders().get(MessageHeaders.CONTENT_TYPE).toString())
+				.isEqualTo(MessageBatches.BATCH_CONTENT_TYPE);
+		List<Message<?>> messages = MessageBatches.unpack(result);
+		assertThat(messages).hasSize(2);
+		assertThat(messages.get(0).getPayload()).isEqualTo("FOO");
+		assertThat(messages.get(0).getHeaders().get("key")).isEqualTo("one");
+		assertThat(messages.get(1).getPayload()).isEqualTo("BAR");
+		assertThat(messages.get(1).getHeaders().get("key")).isEqualTo("two");
+	}
+
+	@Test
+	public void inputsUnpacked() throws Exception {
+		MessageBatches batches = new MessageBatches(new ObjectMapper());
+		Message<byte[]> batch = batches.pack(Flux.just(
+				MessageBuilder.withPayload("foo").setHeader("key", "one").build(),
+				MessageBuilder.withPayload("bar").setHeader("key", "two").build()))
+				.blockFirst();
+		processor.input().send(batch);
+		Message<?> result = messageCollector.forChannel(processor.output()).poll(1000,
+				TimeUnit.MILLISECONDS);
+		assertThat(result).isNotNull();
+		List<Message<?>> messages = MessageBatches.unpack(result);
+		assertThat(messages.stream().map(Message::getPayload)
+				.collect(Collectors.toList())).isEqualTo(Arrays.asList("FOO", "BAR"));
+		assertThat(messages.get(1).getHeaders().get("key")).isEqualTo("two");
+	}
+
+	@SpringBootApplication
+	public static class StreamingFunctionApplication {
+
+		@Bean
+		public FunctionRegistration<Function<List<String>, List<String>>> uppercase() {
+			Map<String, String> properties = new HashMap<>();
+			properties.put("batch.enabled", "true");
+			properties.put("batch.timeout", "10");
+			return new FunctionRegistration<Function<List<String>, List<String>>>(
+					values -> values.stream().map(value -> value.toUpperCase())
+							.collect(Collectors.toList())).properties(properties);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream.function;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.messaging.Processor;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.context.annotation.Bean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ParallelStreamingFunctionTests.StreamingFunctionApplication.class, properties = {
+		"spring.cloud.function.stream.rails=4",
+		"spring.cloud.function.stream.partition-key=headers['key']" })
+public class ParallelStreamingFunctionTests {
+
+	@Autowired
+	Processor processor;
+
+	@Autowired
+	MessageCollector messageCollector;
+
+	@Test
+	public void orderedByKey() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			processor.input().send(MessageBuilder.withPayload("a" + i)
+					.setHeader("key", "a").build());
+			processor.input().send(MessageBuilder.withPayload("b" + i)
+					.setHeader("key", "b").build());
+		}
+		List<String> results = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Message<?> result = messageCollector.forChannel(processor.output())
+					.poll(1000, TimeUnit.MILLISECONDS);
+			assertThat(result).isNotNull();
+			results.add((String) result.getPayload());
+		}
+		assertThat(results.stream().filter(value -> value.startsWith("A"))
+				.collect(Collectors.toList())).containsExactly("A0", "A1", "A2", "A3",
+						"A4", "A5", "A6", "A7", "A8", "A9");
+		assertThat(results.stream().filter(value -> value.startsWith("B"))
+				.collect(Collectors.toList())).containsExactly("B0", "B1", "B2", "B3",
+						"B4", "B5", "B6", "B7", "B8", "B9");
+	}
+
+	@Test
+	public void orderedForEachOfManyKeys() throws Exception {
+		StreamingFunctionApplication.threads.clear();
+		for (int i = 0; i < 25; i++) {
+			for (int key = 0; key < 8; key++) {
+				processor.input().send(MessageBuilder.withPayload("k" + key + "-" + i)
+						.setHeader("key", "k" + key).build());
+			}
+		}
+		Map<String, List<Integer>> results = new LinkedHashMap<>();
+		for (int i = 0; i < 200; i++) {
+			Message<?> result = messageCollector.forChannel(processor.output())
+					.poll(1000, TimeUnit.MILLISECONDS);
+			assertThat(result).isNotNull();
+			String[] value = ((String) result.getPayload()).split("-");
+			results.computeIfAbsent(value[0], key -> new ArrayList<>())
+					.add(Integer.valueOf(value[1]));
+		}
+		assertThat(results).hasSize(8);
+		for (List<Integer> values : results.values()) {
+			assertThat(values).isSorted().hasSize(25);
+		}
+		// The keys really were processed in parallel
+		assertThat(StreamingFunctionApplication.threads.size()).isGreaterThan(1);
+	}
+
+	@Test
+	public void spreadWithoutKey() throws Exception {
+		StreamingFunctionApplication.threads.clear();
+		for (int i = 0; i < 40; i++) {
+			processor.input().send(MessageBuilder.withPayload("x" + i).build());
+		}
+		for (int i = 0; i < 40; i++) {
+			assertThat(messageCollector.forChannel(processor.output()).poll(1000,
+					TimeUnit.MILLISECONDS)).isNotNull();
+		}
+		// A null key does not send everything to the same rail
+		assertThat(StreamingFunctionApplication.threads.size()).isGreaterThan(1);
+	}
+
+	@SpringBootApplication
+	public static class StreamingFunctionApplication {
+
+		static final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+		@Bean
+		public Function<String, String> uppercase() {
+			return s -> {
+				threads.add(Thread.currentThread().getName());
+				try {
+					// Jitter, so that the rails overtake each other
+					Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return s.toUpperCase();
+			};
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.stream.supplier;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.function.stream.MessageBatches;
+import org.springframework.cloud.stream.messaging.Source;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.context.annotation.Bean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BatchedStreamSupplierTests.StreamingFunctionApplication.class, properties = {
+		"spring.cloud.function.stream.output-batch-size=3",
+		"spring.cloud.function.stream.output-compression=gzip" })
+public class BatchedStreamSupplierTests {
+
+	@Autowired
+	Source source;
+
+	@Autowired
+	MessageCollector messageCollector;
+
+	@Test
+	public void outputsPacked() throws Exception {
+		Message<?> result = messageCollector.forChannel(source.output()).poll(1000,
+				TimeUnit.MILLISECONDS);
+		assertThat(result).isNotNull();
+		assertThat(result.getHeaders().get(MessageHeaders.CONTENT_TYPE).toString())
+				.isEqualTo(MessageBatches.BATCH_CONTENT_TYPE);
+		assertThat(result.getHeaders().get(MessageBatches.BATCH_ENCODING))
+				.isEqualTo(MessageBatches.GZIP);
+		List<Message<?>> messages = MessageBatches.unpack(result);
+		assertThat(messages).hasSize(3);
+		assertThat(messages.get(0).getPayload()).isEqualTo("foo");
+		assertThat(new String((byte[]) messages.get(2).getPayload()))
+				.isEqualTo("{\"value\":\"spam\"}");
+	}
+
+	@SpringBootApplication
+	public static class StreamingFunctionApplication {
+
+		@Bean
+		public Supplier<Flux<Object>> words() {
+			return () -> Flux.just("foo", "bar", new Foo("spam"));
+		}
+	}
+
+	public static class Foo {
+
+		private String value;
+
+		public Foo(String value) {
+			this.value = value;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
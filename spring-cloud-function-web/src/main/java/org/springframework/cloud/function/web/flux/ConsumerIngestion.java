@@ -0,0 +1,250 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.support.FluxConsumer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Asynchronous ingestion for consumers, so that a POST returns as soon as its body has
+ * been queued, instead of waiting for (and echoing) the items the consumer has seen. Each
+ * consumer has a bounded queue, drained into the consumer by a dedicated thread, and a
+ * request that does not fit in the queue is rejected as a whole. A plain consumer that
+ * fails for an item is logged and carries on with the next one, and a consumer of a
+ * {@link Flux} that stops taking items (e.g. because of an error) is given a new one.
+ * Consumers opt in with
+ * registration properties: {@value #ASYNC_ENABLED} (true to enable) and
+ * {@value #ASYNC_QUEUE} (the capacity of the queue).
+ *
+ * @author Dave Syer
+ *
+ */
+public class ConsumerIngestion implements DisposableBean {
+
+	private static Log logger = LogFactory.getLog(ConsumerIngestion.class);
+
+	public static final String ASYNC_ENABLED = "async.enabled";
+
+	public static final String ASYNC_QUEUE = "async.queue";
+
+	public static final int DEFAULT_QUEUE = 1024;
+
+	/**
+	 * Result of an offer when there is not room in the queue for all the items right
+	 * now.
+	 */
+	public static final int FULL = -1;
+
+	/**
+	 * Result of an offer when there are more items than the queue can ever hold.
+	 */
+	public static final int TOO_LARGE = -2;
+
+	private static final int DISABLED = 0;
+
+	private final FunctionInspector inspector;
+
+	private final Map<String, Integer> capacities = new ConcurrentHashMap<>();
+
+	private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+	public ConsumerIngestion(FunctionInspector inspector) {
+		this.inspector = inspector;
+	}
+
+	/**
+	 * @param name the name of a consumer
+	 * @return true if items posted to the consumer are queued
+	 */
+	public boolean isEnabled(String name) {
+		return name != null && capacity(name) != DISABLED;
+	}
+
+	/**
+	 * Queue some items for a consumer, unless there is not room for all of them. Room is
+	 * reserved for each item as it is read, so concurrent requests only hold the room
+	 * they need, and reading stops at the first item that there is no room for, so a
+	 * large request is not read into memory just to be rejected.
+	 *
+	 * @param name the name of the consumer
+	 * @param consumer the consumer (subscribed to the queue the first time it is used)
+	 * @param items the items to queue
+	 * @return the number of items queued, or {@link #FULL} or {@link #TOO_LARGE} if they
+	 * were rejected (then none of them are queued)
+	 */
+	public int offer(String name, Consumer<Flux<?>> consumer, Flux<?> items) {
+		Lane lane = this.lanes.computeIfAbsent(name,
+				key -> new Lane(key, consumer, capacity(key)));
+		AtomicInteger read = new AtomicInteger();
+		AtomicInteger reserved = new AtomicInteger();
+		List<?> list;
+		try {
+			list = items.take(lane.capacity + 1).doOnNext(item -> read.incrementAndGet())
+					.takeWhile(item -> lane.reserve() && reserved.incrementAndGet() > 0)
+					.collectList().block();
+		}
+		catch (RuntimeException e) {
+			lane.commit(reserved.get(), null);
+			throw e;
+		}
+		if (read.get() == list.size()) {
+			lane.commit(reserved.get(), list);
+			return list.size();
+		}
+		lane.commit(reserved.get(), null);
+		// There was room for the whole queue and it still was not enough
+		return read.get() > lane.capacity ? TOO_LARGE : FULL;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		for (Lane lane : this.lanes.values()) {
+			lane.close();
+		}
+		this.lanes.clear();
+	}
+
+	private int capacity(String name) {
+		return this.capacities.computeIfAbsent(name, this::create);
+	}
+
+	private Integer create(String name) {
+		Map<String, String> properties = this.inspector.getProperties(name);
+		if (!"true".equals(properties.get(ASYNC_ENABLED))) {
+			return DISABLED;
+		}
+		return Integer.valueOf(
+				properties.getOrDefault(ASYNC_QUEUE, String.valueOf(DEFAULT_QUEUE)));
+	}
+
+	/**
+	 * The queue for one consumer.
+	 */
+	private static final class Lane {
+
+		private final String name;
+
+		private final Consumer<Flux<?>> consumer;
+
+		private final BlockingQueue<Object> queue;
+
+		private final Scheduler scheduler;
+
+		private final int capacity;
+
+		// Room in the queue set aside for requests that are still being read
+		private int reserved;
+
+		private volatile boolean closed;
+
+		private Lane(String name, Consumer<Flux<?>> consumer, int capacity) {
+			this.name = name;
+			this.consumer = consumer;
+			this.capacity = capacity;
+			this.queue = new ArrayBlockingQueue<>(capacity);
+			this.scheduler = Schedulers.newSingle("ingest-" + name, true);
+			subscribe();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Ingesting asynchronously for consumer: " + name);
+			}
+		}
+
+		private void subscribe() {
+			if (this.consumer instanceof FluxConsumer) {
+				// A plain consumer: one bad item should not stop the others
+				@SuppressWarnings({ "unchecked", "rawtypes" })
+				Consumer<Object> target = ((FluxConsumer) this.consumer).getTarget();
+				items().subscribe(item -> {
+					try {
+						target.accept(item);
+					}
+					catch (Exception e) {
+						logger.error("Consumer failed for item: " + this.name, e);
+					}
+				});
+				return;
+			}
+			this.consumer.accept(items().doOnCancel(this::restart));
+		}
+
+		private void restart() {
+			if (this.closed) {
+				return;
+			}
+			logger.error("Consumer stopped taking items (resubscribing): " + this.name);
+			subscribe();
+		}
+
+		private Flux<Object> items() {
+			// Only the scheduler thread waits for items
+			return Flux.generate(sink -> {
+				try {
+					sink.next(this.queue.take());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					sink.complete();
+				}
+			}).subscribeOn(this.scheduler);
+		}
+
+		/**
+		 * @return true if there is room for one more item (which is guaranteed until it
+		 * is committed)
+		 */
+		private synchronized boolean reserve() {
+			if (this.queue.remainingCapacity() - this.reserved <= 0) {
+				return false;
+			}
+			this.reserved++;
+			return true;
+		}
+
+		/**
+		 * Release a reservation, and queue the items (if any) in the room it held.
+		 */
+		private synchronized void commit(int reservation, List<?> items) {
+			this.reserved -= reservation;
+			if (items != null) {
+				this.queue.addAll(items);
+			}
+		}
+
+		private void close() {
+			this.closed = true;
+			this.scheduler.dispose();
+		}
+
+	}
+
+}
@@ -16,28 +16,42 @@
 
 package org.springframework.cloud.function.web.flux;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.support.FunctionUtils;
 import org.springframework.cloud.function.web.flux.request.FluxRequest;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * @author Dave Syer
@@ -48,13 +62,175 @@ public class FunctionController {
 
 	private static Log logger = LogFactory.getLog(FunctionController.class);
 
+	private static final MediaType EVENT_STREAM = MediaType.valueOf("text/event-stream");
+
+	private FunctionCatalog catalog;
+
 	private FunctionInspector inspector;
 
+	private ObjectMapper mapper;
+
 	@Value("${debug:${DEBUG:false}}")
 	private boolean debug = false;
 
-	public FunctionController(FunctionInspector inspector) {
+	private int batchConcurrency = 16;
+
+	private FunctionResultCache cache;
+
+	private SupplierMulticaster multicaster;
+
+	private ConsumerIngestion ingestion;
+
+	public FunctionController(FunctionCatalog catalog, FunctionInspector inspector,
+			ObjectMapper mapper) {
+		this.catalog = catalog;
 		this.inspector = inspector;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Cache for the results of GET requests (for functions that opt in).
+	 * 
+	 * @param cache the cache to set
+	 */
+	public void setCache(FunctionResultCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Multicaster for the output of suppliers that are shared between clients.
+	 * 
+	 * @param multicaster the multicaster to set
+	 */
+	public void setMulticaster(SupplierMulticaster multicaster) {
+		this.multicaster = multicaster;
+	}
+
+	/**
+	 * Queues for consumers that accept their input asynchronously (for consumers that opt
+	 * in).
+	 * 
+	 * @param ingestion the ingestion to set
+	 */
+	public void setIngestion(ConsumerIngestion ingestion) {
+		this.ingestion = ingestion;
+	}
+
+	/**
+	 * @param consumer a consumer
+	 * @return true if POSTs to the consumer should be handled by
+	 * {@link #ingest(Consumer, FluxRequest)}
+	 */
+	public boolean isIngesting(Object consumer) {
+		if (ingestion == null) {
+			return false;
+		}
+		return ingestion.isEnabled(inspector.getName(consumer));
+	}
+
+	/**
+	 * The maximum number of invocations from a single batch request that run at the same
+	 * time.
+	 * 
+	 * @param batchConcurrency the batch concurrency to set
+	 */
+	public void setBatchConcurrency(int batchConcurrency) {
+		this.batchConcurrency = batchConcurrency;
+	}
+
+	/**
+	 * Invoke several functions in one request. The body is an array of envelopes, each
+	 * with a <code>function</code> name and an <code>input</code> value. The results are
+	 * emitted as they complete, each tagged with the <code>index</code> of its envelope
+	 * and carrying either a <code>result</code> or an <code>error</code>. A function that
+	 * produces more than one output for its input is an error.
+	 */
+	@ResponseBody
+	public Flux<Map<String, Object>> batch(
+			@RequestBody List<Map<String, Object>> envelopes) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Handling batch of " + envelopes.size() + " invocations");
+		}
+		return Flux.range(0, envelopes.size()).flatMap(
+				index -> invoke(index, envelopes.get(index)), batchConcurrency);
+	}
+
+	private Flux<Map<String, Object>> invoke(int index, Map<String, Object> envelope) {
+		return Flux.defer(() -> {
+			String name = (String) envelope.get("function");
+			Function<Flux<Object>, Flux<Object>> function = name == null ? null
+					: catalog.lookupFunction(name);
+			if (function == null) {
+				throw new IllegalArgumentException("No such function: " + name);
+			}
+			Object input = mapper.convertValue(envelope.get("input"),
+					inputType(name, function));
+			// Look for a second output so it is not silently dropped
+			return function.apply(Flux.just(input)).take(2).buffer(2)
+					.map(outputs -> single(name, outputs));
+		}).subscribeOn(Schedulers.elastic()).materialize().take(1)
+				.map(signal -> result(index, signal));
+	}
+
+	/**
+	 * The input type of a function, looked up by its registered name (the name in the
+	 * request might be an alias). A composite is not registered, so its input type is
+	 * that of the first function in it.
+	 */
+	private Class<?> inputType(String name, Object function) {
+		String registered = inspector.getName(function);
+		if (registered == null && name.indexOf(',') != -1) {
+			Object first = catalog
+					.lookupFunction(StringUtils.tokenizeToStringArray(name, ",")[0]);
+			registered = inspector.getName(first);
+		}
+		return inspector.getInputType(registered);
+	}
+
+	private Object single(String name, List<Object> outputs) {
+		if (outputs.size() > 1) {
+			throw new IllegalStateException(
+					"Function produced more than one output in a batch: " + name);
+		}
+		return outputs.get(0);
+	}
+
+	private Object cached(String name, Function<Flux<?>, Flux<?>> function,
+			Function<Object, Object> scalar, Object input) {
+		FunctionResultCache.Entry entry = cache.get(name, input);
+		if (entry != null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Handled GET with cached result");
+			}
+			return cached(entry);
+		}
+		if (scalar != null) {
+			Object result = scalar.apply(input);
+			return result == null ? null : cached(cache.put(name, input, result));
+		}
+		// The first client gets the same headers as later hits, so it can revalidate
+		return Mono.from(function.apply(Flux.just(input)))
+				.map(result -> cached(cache.put(name, input, result))).toFuture();
+	}
+
+	private ResponseEntity<Object> cached(FunctionResultCache.Entry entry) {
+		// A request with a matching If-None-Match gets a 304 from the MVC processor
+		return ResponseEntity.ok().eTag(entry.getETag())
+				.cacheControl(CacheControl.maxAge(entry.getMaxAge(), TimeUnit.SECONDS))
+				.body(entry.getValue());
+	}
+
+	private Map<String, Object> result(int index, Signal<?> signal) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("index", index);
+		if (signal.isOnError()) {
+			result.put("error", signal.getThrowable().getMessage());
+		}
+		else {
+			// Empty if the function produced no output
+			result.put("result", signal.get());
+		}
+		return result;
 	}
 
 	@PostMapping(path = "/**")
@@ -82,29 +258,121 @@ public class FunctionController {
 		throw new IllegalArgumentException("no such function");
 	}
 
+	/**
+	 * Hand the body of a POST to a consumer through its queue, without waiting for the
+	 * consumer. The response is a receipt with the <code>count</code> of items accepted,
+	 * or a 429 (and nothing is accepted) if the queue does not have room for all of them,
+	 * or a 413 if there are more of them than the queue can ever hold.
+	 */
+	@ResponseBody
+	public ResponseEntity<Map<String, Object>> ingest(
+			@RequestAttribute(name = "org.springframework.cloud.function.web.flux.constants.WebRequestConstants.consumer") Consumer<Flux<?>> consumer,
+			@RequestBody FluxRequest<?> body) {
+		String name = inspector.getName(consumer);
+		int count = ingestion.offer(name, consumer, body.flux());
+		Map<String, Object> receipt = new LinkedHashMap<>();
+		if (count == ConsumerIngestion.TOO_LARGE) {
+			// Retrying will not help
+			receipt.put("count", 0);
+			receipt.put("error", "Too many items for consumer: " + name);
+			return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(receipt);
+		}
+		if (count == ConsumerIngestion.FULL) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Rejected POST for consumer with full queue: " + name);
+			}
+			receipt.put("count", 0);
+			receipt.put("error", "Queue full for consumer: " + name);
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(receipt);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Handled POST with asynchronous consumer");
+		}
+		receipt.put("count", count);
+		return ResponseEntity.status(HttpStatus.ACCEPTED).body(receipt);
+	}
+
 	@GetMapping(path = "/**")
 	@ResponseBody
 	public Object get(
 			@RequestAttribute(required = false, name = "org.springframework.cloud.function.web.flux.constants.WebRequestConstants.function") Function<Flux<?>, Flux<?>> function,
 			@RequestAttribute(required = false, name = "org.springframework.cloud.function.web.flux.constants.WebRequestConstants.supplier") Supplier<Flux<?>> supplier,
-			@RequestAttribute(required = false, name = "org.springframework.cloud.function.web.flux.constants.WebRequestConstants.argument") String argument) {
+			@RequestAttribute(required = false, name = "org.springframework.cloud.function.web.flux.constants.WebRequestConstants.argument") String argument,
+			@RequestHeader(required = false, name = "Accept") String accept,
+			@RequestHeader(required = false, name = "Last-Event-ID") String lastEventId) {
 		if (function != null) {
-			return value(function, argument);
+			return value(function, argument, isEventStream(accept));
 		}
-		return supplier(supplier);
+		return supplier(supplier, isEventStream(accept), lastEventId);
 	}
 
-	private Flux<?> supplier(Supplier<Flux<?>> supplier) {
-		Flux<?> result = supplier.get();
+	private boolean isEventStream(String accept) {
+		if (accept == null) {
+			return false;
+		}
+		for (MediaType type : MediaType.parseMediaTypes(accept)) {
+			if (!MediaType.ALL.equals(type) && EVENT_STREAM.isCompatibleWith(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Object supplier(Supplier<Flux<?>> supplier, boolean stream,
+			String lastEventId) {
+		String name = multicaster == null ? null : inspector.getName(supplier);
+		if (name != null && multicaster.isEnabled(name)) {
+			Flux<?> result;
+			if (stream && multicaster.isResumable(name)) {
+				// Events with ids, so a client that reconnects can resume
+				result = multicaster.events(name, supplier, lastEventId);
+			}
+			else {
+				result = multicaster.subscribe(name, supplier);
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Handled GET with shared supplier");
+			}
+			return debug ? result.log() : result;
+		}
+		Supplier<Object> scalar = FunctionUtils.getScalarSupplier(supplier);
+		Flux<?> result;
+		if (scalar != null) {
+			Object value = scalar.get();
+			if (!(value instanceof Stream)) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Handled GET with scalar supplier");
+				}
+				return value;
+			}
+			// The supplier has already been called, so do not call it again
+			result = Flux.fromStream((Stream<?>) value);
+		}
+		else {
+			result = supplier.get();
+		}
 		if (logger.isDebugEnabled()) {
 			logger.debug("Handled GET with supplier");
 		}
 		return debug ? result.log() : result;
 	}
 
-	private Mono<?> value(Function<Flux<?>, Flux<?>> function,
-			@PathVariable String value) {
-		Object input = inspector.convert(inspector.getName(function), value);
+	private Object value(Function<Flux<?>, Flux<?>> function, String value,
+			boolean stream) {
+		String name = inspector.getName(function);
+		Object input = inspector.convert(name, value);
+		Function<Object, Object> scalar = FunctionUtils.getScalarFunction(function);
+		if (!stream && cache != null && cache.isEnabled(name)) {
+			return cached(name, function, scalar, input);
+		}
+		if (scalar != null && !stream) {
+			// Plain function and a plain response: no need for a reactive pipeline
+			Object result = scalar.apply(input);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Handled GET with scalar function");
+			}
+			return result;
+		}
 		Mono<?> result = Mono.from(function.apply(Flux.just(input)));
 		if (logger.isDebugEnabled()) {
 			logger.debug("Handled GET with function");
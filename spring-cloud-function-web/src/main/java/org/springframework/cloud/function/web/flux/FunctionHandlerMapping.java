@@ -16,12 +16,15 @@
 
 package org.springframework.cloud.function.web.flux;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,6 +33,7 @@ import org.springframework.cloud.function.context.FunctionInspector;
 import org.springframework.cloud.function.registry.FunctionCatalog;
 import org.springframework.cloud.function.web.flux.constants.WebRequestConstants;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
@@ -43,6 +47,10 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandl
 public class FunctionHandlerMapping extends RequestMappingHandlerMapping
 		implements InitializingBean {
 
+	private static final String BATCH = "/_batch";
+
+	private static final long REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
 	private final FunctionCatalog functions;
 
 	private final FunctionController controller;
@@ -50,12 +58,35 @@ public class FunctionHandlerMapping extends RequestMappingHandlerMapping
 	@Value("${spring.cloud.function.web.path:}")
 	private String prefix = "";
 
+	private volatile FunctionRouteIndex routes;
+
+	private volatile long checked = System.nanoTime() - REFRESH_INTERVAL;
+
+	private HandlerMethod batch;
+
+	private HandlerMethod ingest;
+
 	@Autowired
-	public FunctionHandlerMapping(FunctionCatalog catalog, FunctionInspector inspector) {
+	public FunctionHandlerMapping(FunctionCatalog catalog, FunctionInspector inspector,
+			ObjectMapper mapper, FunctionResultCache cache,
+			SupplierMulticaster multicaster, ConsumerIngestion ingestion) {
 		this.functions = catalog;
 		logger.info("FunctionCatalog: " + catalog + ", FunctionInspector: " + inspector);
 		setOrder(super.getOrder() - 5);
-		this.controller = new FunctionController(inspector);
+		this.controller = new FunctionController(catalog, inspector, mapper);
+		this.controller.setCache(cache);
+		this.controller.setMulticaster(multicaster);
+		this.controller.setIngestion(ingestion);
+	}
+
+	/**
+	 * The maximum number of invocations from a single batch request that run at the same
+	 * time.
+	 * 
+	 * @param batchConcurrency the batch concurrency to set
+	 */
+	public void setBatchConcurrency(int batchConcurrency) {
+		this.controller.setBatchConcurrency(batchConcurrency);
 	}
 
 	@Override
@@ -65,6 +96,12 @@ public class FunctionHandlerMapping extends RequestMappingHandlerMapping
 		while (prefix.endsWith("/")) {
 			prefix = prefix.substring(0, prefix.length() - 1);
 		}
+		// Null if the catalog cannot list its contents (then fall back to lookups)
+		this.routes = FunctionRouteIndex.build(functions);
+		this.batch = new HandlerMethod(controller, ReflectionUtils
+				.findMethod(FunctionController.class, "batch", (Class<?>[]) null));
+		this.ingest = new HandlerMethod(controller, ReflectionUtils
+				.findMethod(FunctionController.class, "ingest", (Class<?>[]) null));
 	}
 
 	@Override
@@ -76,31 +113,117 @@ public class FunctionHandlerMapping extends RequestMappingHandlerMapping
 		}
 		String path = (String) request
 				.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
-		if (path.startsWith(prefix)) {
-			path = path.substring(prefix.length());
-		}
 		if (path == null) {
 			return handler;
 		}
-		Object function = findFunctionForGet(request, path);
-		if (function != null) {
-			if (logger.isDebugEnabled()) {
-				logger.debug("Found function for GET: " + path);
+		if (isBatch(request, path)) {
+			return batch;
+		}
+		Object function = null;
+		FunctionRouteIndex routes = this.routes;
+		if (routes != null) {
+			function = findFunction(request, path, routes);
+		}
+		else {
+			if (path.startsWith(prefix)) {
+				path = path.substring(prefix.length());
+			}
+			function = findFunctionForGet(request, path);
+			if (function == null) {
+				function = findFunctionForPost(request, path);
 			}
-			request.setAttribute(WebRequestConstants.HANDLER, function);
-			return handler;
 		}
-		function = findFunctionForPost(request, path);
 		if (function != null) {
 			if (logger.isDebugEnabled()) {
-				logger.debug("Found function for POST: " + path);
+				logger.debug("Found function for " + request.getMethod() + ": " + path);
 			}
 			request.setAttribute(WebRequestConstants.HANDLER, function);
+			if (isIngest(request)) {
+				return ingest;
+			}
 			return handler;
 		}
 		return null;
 	}
 
+	private boolean isBatch(HttpServletRequest request, String path) {
+		if (!request.getMethod().equals("POST")) {
+			return false;
+		}
+		int start = path.startsWith(prefix) ? prefix.length() : 0;
+		return path.startsWith(BATCH, start) && path.length() == start + BATCH.length();
+	}
+
+	private boolean isIngest(HttpServletRequest request) {
+		Object consumer = request.getAttribute(WebRequestConstants.CONSUMER);
+		return consumer != null && controller.isIngesting(consumer);
+	}
+
+	private Object findFunction(HttpServletRequest request, String path,
+			FunctionRouteIndex routes) {
+		boolean get = request.getMethod().equals("GET");
+		if (!get && !request.getMethod().equals("POST")) {
+			return null;
+		}
+		int start = path.startsWith(prefix) ? prefix.length() : 0;
+		if (start < path.length() && path.charAt(start) == '/') {
+			start++;
+		}
+		FunctionRouteIndex.Route route = routes.match(get, path, start);
+		Object function = route == null ? null : lookup(request, route);
+		if (function == null && isStale(routes)) {
+			// The catalog has changed since the index was built
+			routes = FunctionRouteIndex.build(functions);
+			this.routes = routes;
+			if (routes != null) {
+				route = routes.match(get, path, start);
+				function = route == null ? null : lookup(request, route);
+			}
+		}
+		return function;
+	}
+
+	/**
+	 * Listing the catalog can be expensive, so a miss only checks if the index is out of
+	 * date if it has not been checked for a while.
+	 */
+	private boolean isStale(FunctionRouteIndex routes) {
+		long now = System.nanoTime();
+		if (now - this.checked < REFRESH_INTERVAL) {
+			return false;
+		}
+		this.checked = now;
+		return !routes.isCurrent(functions);
+	}
+
+	private Object lookup(HttpServletRequest request, FunctionRouteIndex.Route route) {
+		switch (route.getKind()) {
+		case SUPPLIER:
+			Supplier<Object> supplier = functions.lookupSupplier(route.getName());
+			if (supplier != null) {
+				request.setAttribute(WebRequestConstants.SUPPLIER, supplier);
+			}
+			return supplier;
+		case CONSUMER:
+			Consumer<Object> consumer = functions.lookupConsumer(route.getName());
+			if (consumer != null) {
+				request.setAttribute(WebRequestConstants.CONSUMER, consumer);
+			}
+			return consumer;
+		default:
+			Function<Object, Object> function = functions
+					.lookupFunction(route.getName());
+			if (function != null) {
+				request.setAttribute(WebRequestConstants.FUNCTION, function);
+				if (route.getArgument() != null) {
+					request.setAttribute(WebRequestConstants.ARGUMENT,
+							route.getArgument());
+				}
+			}
+			return function;
+		}
+	}
+
 	private Object findFunctionForPost(HttpServletRequest request, String path) {
 		if (!request.getMethod().equals("POST")) {
 			return null;
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cloud.function.context.FunctionInspector;
+
+/**
+ * Cache for the results of functions invoked with a GET, so that a repeated call with
+ * the same argument does not run the function again. Functions opt in with registration
+ * properties: {@value #CACHE_ENABLED} (true to enable), {@value #CACHE_SIZE} (the
+ * maximum number of entries, least recently used are evicted first) and
+ * {@value #CACHE_TTL} (time to live of an entry in milliseconds).
+ *
+ * @author Dave Syer
+ *
+ */
+public class FunctionResultCache {
+
+	public static final String CACHE_ENABLED = "cache.enabled";
+
+	public static final String CACHE_SIZE = "cache.size";
+
+	public static final String CACHE_TTL = "cache.ttl";
+
+	public static final int DEFAULT_SIZE = 1000;
+
+	public static final long DEFAULT_TTL = 60000L;
+
+	private static final Region DISABLED = new Region(0, 0, null);
+
+	private final FunctionInspector inspector;
+
+	private final Map<String, Region> regions = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong versions = new AtomicLong();
+
+	public FunctionResultCache(FunctionInspector inspector) {
+		this.inspector = inspector;
+	}
+
+	/**
+	 * @param name the name of a function
+	 * @return true if results of the function can be cached
+	 */
+	public boolean isEnabled(String name) {
+		return name != null && region(name) != DISABLED;
+	}
+
+	/**
+	 * @param name the name of a function
+	 * @param key the input to the function
+	 * @return a cached result, or null if there is none that has not expired
+	 */
+	public Entry get(String name, Object key) {
+		Region region = region(name);
+		Entry entry;
+		synchronized (region) {
+			entry = region.get(key);
+			if (entry != null && entry.isExpired()) {
+				region.remove(key);
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			this.misses.incrementAndGet();
+		}
+		else {
+			this.hits.incrementAndGet();
+		}
+		return entry;
+	}
+
+	/**
+	 * @param name the name of a function
+	 * @param key the input to the function
+	 * @param value the result of the function
+	 * @return the new entry
+	 */
+	public Entry put(String name, Object key, Object value) {
+		Region region = region(name);
+		Entry entry = new Entry(value,
+				"\"" + Long.toHexString(this.versions.incrementAndGet()) + "\"",
+				System.nanoTime() + region.ttl);
+		synchronized (region) {
+			region.put(key, entry);
+		}
+		return entry;
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	private Region region(String name) {
+		return this.regions.computeIfAbsent(name, this::create);
+	}
+
+	private Region create(String name) {
+		Map<String, String> properties = this.inspector.getProperties(name);
+		if (!"true".equals(properties.get(CACHE_ENABLED))) {
+			return DISABLED;
+		}
+		int size = Integer.valueOf(
+				properties.getOrDefault(CACHE_SIZE, String.valueOf(DEFAULT_SIZE)));
+		long ttl = properties.containsKey(CACHE_TTL)
+				? Long.valueOf(properties.get(CACHE_TTL)) : DEFAULT_TTL;
+		return new Region(size, TimeUnit.MILLISECONDS.toNanos(ttl), this.evictions);
+	}
+
+	/**
+	 * A cached function result.
+	 */
+	public static final class Entry {
+
+		private final Object value;
+
+		private final String etag;
+
+		private final long expires;
+
+		private Entry(Object value, String etag, long expires) {
+			this.value = value;
+			this.etag = etag;
+			this.expires = expires;
+		}
+
+		public Object getValue() {
+			return this.value;
+		}
+
+		public String getETag() {
+			return this.etag;
+		}
+
+		/**
+		 * @return the number of seconds until the entry expires
+		 */
+		public long getMaxAge() {
+			return Math.max(0,
+					TimeUnit.NANOSECONDS.toSeconds(this.expires - System.nanoTime()));
+		}
+
+		private boolean isExpired() {
+			return this.expires - System.nanoTime() <= 0;
+		}
+
+	}
+
+	/**
+	 * The entries for one function, in access order so the least recently used is
+	 * evicted when the region is full.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Region extends LinkedHashMap<Object, Entry> {
+
+		private final int size;
+
+		private final long ttl;
+
+		private final AtomicLong evictions;
+
+		private Region(int size, long ttl, AtomicLong evictions) {
+			super(16, 0.75f, true);
+			this.size = size;
+			this.ttl = ttl;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+			if (size() > this.size) {
+				this.evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.cloud.function.registry.FunctionCatalog;
+
+/**
+ * Index of the names in a {@link FunctionCatalog}, organized as a trie on the characters
+ * of the names, so that a request path can be matched to a supplier, function or
+ * consumer in a single scan, instead of splitting it and looking up every prefix in the
+ * catalog. Composite function names (comma separated) are matched by restarting at the
+ * root of the trie after each comma.
+ *
+ * @author Dave Syer
+ *
+ */
+final class FunctionRouteIndex {
+
+	enum Kind {
+		SUPPLIER, FUNCTION, CONSUMER
+	}
+
+	private final Node root = new Node();
+
+	private final Set<String> suppliers;
+
+	private final Set<String> functions;
+
+	private final Set<String> consumers;
+
+	private FunctionRouteIndex(Set<String> suppliers, Set<String> functions,
+			Set<String> consumers) {
+		// Copies, because a catalog may return live views of its contents
+		this.suppliers = new HashSet<>(suppliers);
+		this.functions = new HashSet<>(functions);
+		this.consumers = new HashSet<>(consumers);
+		for (String name : suppliers) {
+			insert(name).supplier = name;
+		}
+		for (String name : functions) {
+			insert(name).function = name;
+		}
+		for (String name : consumers) {
+			insert(name).consumer = name;
+		}
+	}
+
+	/**
+	 * @param catalog the catalog to index
+	 * @return an index of the catalog, or null if the catalog cannot list its contents
+	 */
+	public static FunctionRouteIndex build(FunctionCatalog catalog) {
+		Set<String> suppliers = catalog.getNames(Supplier.class);
+		Set<String> functions = catalog.getNames(Function.class);
+		Set<String> consumers = catalog.getNames(Consumer.class);
+		if (suppliers == null || functions == null || consumers == null) {
+			return null;
+		}
+		return new FunctionRouteIndex(suppliers, functions, consumers);
+	}
+
+	/**
+	 * @param catalog the catalog that was indexed
+	 * @return true if the catalog contents are the same as when the index was built
+	 */
+	public boolean isCurrent(FunctionCatalog catalog) {
+		return this.suppliers.equals(catalog.getNames(Supplier.class))
+				&& this.functions.equals(catalog.getNames(Function.class))
+				&& this.consumers.equals(catalog.getNames(Consumer.class));
+	}
+
+	/**
+	 * Match a request to a route. A GET matches a supplier with the whole path as its
+	 * name, or else a function with a leading part of the path as its name (the rest of
+	 * the path is the argument). A POST matches a consumer or a function with the whole
+	 * path as its name.
+	 *
+	 * @param get true if the request is a GET (otherwise a POST)
+	 * @param path the request path
+	 * @param start the index in the path where the name starts
+	 * @return the matching route or null if there is none
+	 */
+	public Route match(boolean get, String path, int start) {
+		int end = path.length();
+		// Walks the path as a single name
+		Node literal = this.root;
+		// Walks the path as a composite function name
+		Node node = this.root;
+		boolean composite = false;
+		Route function = null;
+		for (int i = start; i < end; i++) {
+			char c = path.charAt(i);
+			if (get && function == null && c == '/' && node != null
+					&& node.function != null) {
+				function = new Route(Kind.FUNCTION,
+						composite ? path.substring(start, i) : node.function,
+						path.substring(i + 1));
+			}
+			if (c == ',') {
+				if (node != null && node.function != null) {
+					composite = true;
+					node = this.root;
+				}
+				else {
+					node = null;
+				}
+			}
+			else if (node != null) {
+				node = node.child(c);
+			}
+			if (literal != null) {
+				literal = literal.child(c);
+			}
+			if (literal == null && (node == null || function != null)) {
+				return function;
+			}
+		}
+		if (literal != null) {
+			if (get && literal.supplier != null) {
+				return new Route(Kind.SUPPLIER, literal.supplier, null);
+			}
+			if (!get && literal.consumer != null) {
+				return new Route(Kind.CONSUMER, literal.consumer, null);
+			}
+		}
+		if (function == null && node != null && node.function != null) {
+			function = new Route(Kind.FUNCTION,
+					composite ? path.substring(start, end) : node.function, null);
+		}
+		return function;
+	}
+
+	private Node insert(String name) {
+		Node node = this.root;
+		for (int i = 0; i < name.length(); i++) {
+			node = node.add(name.charAt(i));
+		}
+		return node;
+	}
+
+	static final class Route {
+
+		private final Kind kind;
+
+		private final String name;
+
+		private final String argument;
+
+		private Route(Kind kind, String name, String argument) {
+			this.kind = kind;
+			this.name = name;
+			this.argument = argument;
+		}
+
+		public Kind getKind() {
+			return this.kind;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public String getArgument() {
+			return this.argument;
+		}
+
+	}
+
+	private static final class Node {
+
+		private char[] keys = new char[0];
+
+		private Node[] children = new Node[0];
+
+		private String supplier;
+
+		private String function;
+
+		private String consumer;
+
+		private Node child(char c) {
+			for (int i = 0; i < this.keys.length; i++) {
+				if (this.keys[i] == c) {
+					return this.children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node add(char c) {
+			Node node = child(c);
+			if (node == null) {
+				node = new Node();
+				int size = this.keys.length;
+				this.keys = Arrays.copyOf(this.keys, size + 1);
+				this.children = Arrays.copyOf(this.children, size + 1);
+				this.keys[size] = c;
+				this.children[size] = node;
+			}
+			return node;
+		}
+
+	}
+
+}
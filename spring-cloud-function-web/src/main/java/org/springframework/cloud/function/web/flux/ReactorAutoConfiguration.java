@@ -17,13 +17,17 @@
 package org.springframework.cloud.function.web.flux;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
@@ -55,28 +59,79 @@ public class ReactorAutoConfiguration {
 	@Autowired
 	private ApplicationContext context;
 
+	@Value("${spring.cloud.function.web.batch.concurrency:16}")
+	private int batchConcurrency;
+
 	@Bean
 	public FunctionHandlerMapping functionHandlerMapping(FunctionCatalog catalog,
-			FunctionInspector inspector) {
-		return new FunctionHandlerMapping(catalog, inspector);
+			FunctionInspector inspector, ObjectMapper mapper, FunctionResultCache cache,
+			SupplierMulticaster multicaster, ConsumerIngestion ingestion) {
+		FunctionHandlerMapping mapping = new FunctionHandlerMapping(catalog, inspector,
+				mapper, cache, multicaster, ingestion);
+		mapping.setBatchConcurrency(batchConcurrency);
+		return mapping;
+	}
+
+	@Bean
+	public ConsumerIngestion consumerIngestion(FunctionInspector inspector) {
+		return new ConsumerIngestion(inspector);
+	}
+
+	@Bean
+	public SupplierMulticaster supplierMulticaster(FunctionInspector inspector,
+			FunctionCatalog catalog) {
+		return new SupplierMulticaster(inspector, catalog);
+	}
+
+	@Bean
+	public FunctionResultCache functionResultCache(FunctionInspector inspector) {
+		return new FunctionResultCache(inspector);
+	}
+
+	@Configuration
+	@ConditionalOnClass(PublicMetrics.class)
+	protected static class FunctionResultCacheMetricsConfiguration {
+		@Bean
+		public PublicMetrics functionResultCacheMetrics(FunctionResultCache cache) {
+			return () -> Arrays.<Metric<?>>asList(
+					new Metric<Long>("function.cache.hits", cache.getHits()),
+					new Metric<Long>("function.cache.misses", cache.getMisses()),
+					new Metric<Long>("function.cache.evictions", cache.getEvictions()));
+		}
 	}
 
 	@Configuration
 	@ConditionalOnMissingClass("org.springframework.core.ReactiveAdapter")
 	protected static class FluxReturnValueConfiguration {
+		@Value("${spring.cloud.function.web.high-water-mark:256}")
+		private int highWaterMark;
+
+		@Value("${spring.cloud.function.web.result-timeout:30000}")
+		private long resultTimeout;
+
 		@Bean
 		public FluxReturnValueHandler fluxReturnValueHandler(FunctionInspector inspector, 
 				HttpMessageConverters converters) {
-			return new FluxReturnValueHandler(inspector, converters.getConverters());
+			FluxReturnValueHandler handler = new FluxReturnValueHandler(inspector,
+					converters.getConverters());
+			handler.setHighWaterMark(highWaterMark);
+			handler.setResultTimeout(resultTimeout);
+			return handler;
 		}
 	}
 
 	@Configuration
 	protected static class FluxArgumentResolverConfiguration {
+		@Value("${spring.cloud.function.web.text.delimiter:}")
+		private String delimiter;
+
 		@Bean
 		public FluxHandlerMethodArgumentResolver fluxHandlerMethodArgumentResolver(
 				FunctionInspector inspector, ObjectMapper mapper) {
-			return new FluxHandlerMethodArgumentResolver(inspector, mapper);
+			FluxHandlerMethodArgumentResolver resolver = new FluxHandlerMethodArgumentResolver(
+					inspector, mapper);
+			resolver.setDelimiter(delimiter);
+			return resolver;
 		}
 	}
 
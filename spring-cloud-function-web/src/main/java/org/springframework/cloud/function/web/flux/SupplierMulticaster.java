@@ -0,0 +1,605 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.web.flux.support.Event;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Shares a single subscription to a supplier between all the clients that GET it at the
+ * same time, instead of calling the supplier once per client. The upstream subscription
+ * is made when the first client arrives and cancelled when the last one leaves. Each
+ * client has its own bounded buffer, so a slow client does not hold up the others, and
+ * when the buffer is full the oldest or newest item is dropped, or the client is
+ * disconnected. Suppliers opt in with registration properties: {@value #SHARED_ENABLED}
+ * (true to enable), {@value #SHARED_BUFFER} (the size of each client buffer) and
+ * {@value #SHARED_OVERFLOW} (<code>drop-oldest</code>, <code>drop-newest</code> or
+ * <code>disconnect</code>).
+ * <p>
+ * A shared supplier can also be resumable: if {@value #SHARED_REPLAY} is positive the
+ * most recent items (up to that many, and no older than {@value #SHARED_REPLAY_TTL}
+ * milliseconds) are kept, each with an increasing id. A client that reconnects with the
+ * id of the last item it saw gets the items it missed and then carries on with the live
+ * stream. The upstream is kept for the same period after the last client leaves, so a
+ * reconnecting client reattaches to it instead of starting again.
+ *
+ * @author Dave Syer
+ *
+ */
+public class SupplierMulticaster implements SmartInitializingSingleton {
+
+	private static Log logger = LogFactory.getLog(SupplierMulticaster.class);
+
+	public static final String SHARED_ENABLED = "shared.enabled";
+
+	public static final String SHARED_BUFFER = "shared.buffer";
+
+	public static final String SHARED_OVERFLOW = "shared.overflow";
+
+	public static final String SHARED_REPLAY = "shared.replay";
+
+	public static final String SHARED_REPLAY_TTL = "shared.replay.ttl";
+
+	public static final int DEFAULT_BUFFER = 256;
+
+	public static final long DEFAULT_REPLAY_TTL = 60000L;
+
+	private static final Settings DISABLED = new Settings(0, null, 0, 0);
+
+	private final FunctionInspector inspector;
+
+	private final FunctionCatalog catalog;
+
+	private final Map<String, Settings> settings = new ConcurrentHashMap<>();
+
+	private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+	// Shared by all upstreams so an id from an old upstream is older than any new one
+	private final AtomicLong sequence = new AtomicLong();
+
+	public SupplierMulticaster(FunctionInspector inspector) {
+		this(inspector, null);
+	}
+
+	/**
+	 * @param inspector the source of the registration properties
+	 * @param catalog the catalog whose suppliers are checked for valid properties on
+	 * startup (can be null)
+	 */
+	public SupplierMulticaster(FunctionInspector inspector, FunctionCatalog catalog) {
+		this.inspector = inspector;
+		this.catalog = catalog;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		Set<String> names = this.catalog == null ? null
+				: this.catalog.getNames(Supplier.class);
+		if (names != null) {
+			// Fail fast if the properties are invalid, instead of on every request
+			for (String name : names) {
+				settings(name);
+			}
+		}
+	}
+
+	/**
+	 * @param name the name of a supplier
+	 * @return true if the output of the supplier is shared between clients
+	 */
+	public boolean isEnabled(String name) {
+		return name != null && settings(name) != DISABLED;
+	}
+
+	/**
+	 * @param name the name of a supplier
+	 * @return true if the output of the supplier is shared and a client can resume
+	 * reading it after reconnecting
+	 */
+	public boolean isResumable(String name) {
+		return isEnabled(name) && settings(name).replay > 0;
+	}
+
+	/**
+	 * @param name the name of a supplier
+	 * @param supplier the supplier (only called if there is no shared subscription
+	 * already)
+	 * @return a flux for a single client of the shared output of the supplier
+	 */
+	public Flux<Object> subscribe(String name, Supplier<Flux<?>> supplier) {
+		return events(name, supplier, null).map(Event::getValue);
+	}
+
+	/**
+	 * @param name the name of a supplier
+	 * @param supplier the supplier (only called if there is no shared subscription
+	 * already)
+	 * @param lastEventId the id of the last event the client saw (or null if it is a new
+	 * client)
+	 * @return a flux for a single client of the shared output of the supplier, starting
+	 * with any retained events after the last one that it saw
+	 */
+	public Flux<Event> events(String name, Supplier<Flux<?>> supplier,
+			String lastEventId) {
+		Settings settings = settings(name);
+		Long last = parse(lastEventId);
+		return Flux.from(subscriber -> {
+			Upstream upstream = this.upstreams.computeIfAbsent(name,
+					key -> new Upstream(key, supplier, settings));
+			while (!upstream.join()) {
+				// Released after we found it, so start a new one
+				this.upstreams.remove(name, upstream);
+				upstream = this.upstreams.computeIfAbsent(name,
+						key -> new Upstream(key, supplier, settings));
+			}
+			Client client = new Client(subscriber, upstream);
+			subscriber.onSubscribe(client);
+			upstream.flux.subscribe(client);
+			upstream.retain();
+			if (last != null && settings.replay > 0) {
+				client.replay(upstream.replay(last));
+			}
+		});
+	}
+
+	private Long parse(String lastEventId) {
+		if (lastEventId == null) {
+			return null;
+		}
+		try {
+			return Long.valueOf(lastEventId.trim());
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private Settings settings(String name) {
+		return this.settings.computeIfAbsent(name, this::create);
+	}
+
+	private Settings create(String name) {
+		Map<String, String> properties = this.inspector.getProperties(name);
+		if (!"true".equals(properties.get(SHARED_ENABLED))) {
+			return DISABLED;
+		}
+		try {
+			int buffer = Integer.valueOf(properties.getOrDefault(SHARED_BUFFER,
+					String.valueOf(DEFAULT_BUFFER)));
+			Overflow overflow = properties.containsKey(SHARED_OVERFLOW)
+					? Overflow.valueOf(properties.get(SHARED_OVERFLOW).trim()
+							.toUpperCase().replace('-', '_'))
+					: Overflow.DROP_OLDEST;
+			int replay = Integer.valueOf(properties.getOrDefault(SHARED_REPLAY, "0"));
+			long ttl = properties.containsKey(SHARED_REPLAY_TTL)
+					? Long.valueOf(properties.get(SHARED_REPLAY_TTL))
+					: DEFAULT_REPLAY_TTL;
+			return new Settings(buffer, overflow, replay,
+					TimeUnit.MILLISECONDS.toNanos(ttl));
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalStateException(
+					"Invalid shared properties for supplier: " + name, e);
+		}
+	}
+
+	/**
+	 * What to do when a client buffer is full and another item arrives.
+	 */
+	public enum Overflow {
+
+		/**
+		 * Drop the oldest item in the buffer to make room.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Drop the item that just arrived.
+		 */
+		DROP_NEWEST,
+
+		/**
+		 * Disconnect the client (its response ends with an error).
+		 */
+		DISCONNECT
+
+	}
+
+	private static final class Settings {
+
+		private final int buffer;
+
+		private final Overflow overflow;
+
+		private final int replay;
+
+		private final long ttl;
+
+		private Settings(int buffer, Overflow overflow, int replay, long ttl) {
+			this.buffer = buffer;
+			this.overflow = overflow;
+			this.replay = replay;
+			this.ttl = ttl;
+		}
+
+	}
+
+	/**
+	 * The shared subscription to one supplier, with the events retained for replay.
+	 */
+	private final class Upstream {
+
+		private final String name;
+
+		private final Settings settings;
+
+		private final Flux<Event> flux;
+
+		// Guarded by itself
+		private final ArrayDeque<Event> retained = new ArrayDeque<>();
+
+		// The fields below are guarded by this
+
+		private int clients;
+
+		private long generation;
+
+		private boolean released;
+
+		private Client retainer;
+
+		@SuppressWarnings("unchecked")
+		private Upstream(String name, Supplier<Flux<?>> supplier, Settings settings) {
+			this.name = name;
+			this.settings = settings;
+			// Forget the upstream when it is cancelled or terminates, so the next
+			// client starts a new one
+			this.flux = Flux.defer(() -> (Flux<Object>) supplier.get())
+					.map(this::record).doOnCancel(this::release)
+					.doAfterTerminate(this::release).publish().refCount();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Sharing supplier: " + name);
+			}
+		}
+
+		private Event record(Object value) {
+			Event event = new Event(SupplierMulticaster.this.sequence.incrementAndGet(),
+					value);
+			if (this.settings.replay > 0) {
+				synchronized (this.retained) {
+					if (this.retained.size() >= this.settings.replay) {
+						this.retained.poll();
+					}
+					this.retained.offer(event);
+				}
+			}
+			return event;
+		}
+
+		private List<Event> replay(long last) {
+			List<Event> events = new ArrayList<>();
+			long now = System.nanoTime();
+			synchronized (this.retained) {
+				for (Event event : this.retained) {
+					if (event.getId() > last
+							&& now - event.getTimestamp() < this.settings.ttl) {
+						events.add(event);
+					}
+				}
+			}
+			return events;
+		}
+
+		/**
+		 * @return false if the upstream has already been released (then the caller
+		 * needs a new one)
+		 */
+		private synchronized boolean join() {
+			if (this.released) {
+				return false;
+			}
+			this.clients++;
+			this.generation++;
+			return true;
+		}
+
+		private void retain() {
+			Client retainer;
+			synchronized (this) {
+				if (this.settings.replay <= 0 || this.retainer != null) {
+					return;
+				}
+				// Keeps the upstream (and the retained events) alive while no clients
+				// are connected
+				retainer = new Client(null, this);
+				this.retainer = retainer;
+			}
+			this.flux.subscribe(retainer);
+		}
+
+		private void leave() {
+			long generation;
+			synchronized (this) {
+				this.clients--;
+				if (this.clients > 0 || this.retainer == null) {
+					return;
+				}
+				generation = this.generation;
+			}
+			Mono.delay(Duration.ofNanos(this.settings.ttl))
+					.subscribe(tick -> expire(generation));
+		}
+
+		private void expire(long generation) {
+			Client retainer;
+			synchronized (this) {
+				if (this.clients > 0 || this.generation != generation) {
+					return;
+				}
+				retainer = this.retainer;
+				this.retainer = null;
+			}
+			if (retainer != null) {
+				retainer.cancel();
+			}
+		}
+
+		/**
+		 * Forget the upstream, unless a client joined it (or it is being kept for
+		 * replay) in the meantime, in which case it is reused.
+		 */
+		private void release() {
+			synchronized (this) {
+				if (this.clients > 0 || this.retainer != null) {
+					return;
+				}
+				this.released = true;
+			}
+			SupplierMulticaster.this.upstreams.remove(this.name, this);
+		}
+
+	}
+
+	/**
+	 * Subscribes to the shared upstream with unbounded demand and buffers items until
+	 * its own subscriber asks for them. A client with no subscriber just keeps the
+	 * upstream alive.
+	 */
+	private static final class Client implements Subscriber<Event>, Subscription {
+
+		private final Subscriber<? super Event> actual;
+
+		private final Upstream owner;
+
+		private final Settings settings;
+
+		// Guarded by itself
+		private final ArrayDeque<Event> queue = new ArrayDeque<>();
+
+		// The id of the latest event added to the queue (guarded by the queue)
+		private long last;
+
+		private final AtomicLong requested = new AtomicLong();
+
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private final AtomicBoolean left = new AtomicBoolean();
+
+		private volatile Subscription upstream;
+
+		private volatile boolean cancelled;
+
+		private volatile boolean done;
+
+		private Throwable error;
+
+		private Client(Subscriber<? super Event> actual, Upstream owner) {
+			this.actual = actual;
+			this.owner = owner;
+			this.settings = owner.settings;
+		}
+
+		@Override
+		public void onSubscribe(Subscription s) {
+			this.upstream = s;
+			if (this.cancelled) {
+				s.cancel();
+			}
+			else {
+				s.request(Long.MAX_VALUE);
+			}
+		}
+
+		@Override
+		public void onNext(Event item) {
+			if (this.done || this.actual == null) {
+				return;
+			}
+			boolean disconnect = false;
+			synchronized (this.queue) {
+				if (item.getId() <= this.last) {
+					// Already replayed
+					return;
+				}
+				this.last = item.getId();
+				if (this.queue.size() < this.settings.buffer) {
+					this.queue.offer(item);
+				}
+				else if (this.settings.overflow == Overflow.DROP_OLDEST) {
+					this.queue.poll();
+					this.queue.offer(item);
+				}
+				else if (this.settings.overflow == Overflow.DISCONNECT) {
+					this.queue.clear();
+					disconnect = true;
+				}
+			}
+			if (disconnect) {
+				this.upstream.cancel();
+				onError(new IllegalStateException(
+						"Client buffer overflow (" + this.settings.buffer + " items)"));
+				return;
+			}
+			drain();
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			if (this.done) {
+				return;
+			}
+			this.error = t;
+			this.done = true;
+			drain();
+		}
+
+		@Override
+		public void onComplete() {
+			if (this.done) {
+				return;
+			}
+			this.done = true;
+			drain();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				return;
+			}
+			this.requested.getAndUpdate(
+					current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			this.cancelled = true;
+			// Leave first, so the upstream can be released if this was the last client
+			leave();
+			Subscription s = this.upstream;
+			if (s != null) {
+				s.cancel();
+			}
+			synchronized (this.queue) {
+				this.queue.clear();
+			}
+		}
+
+		/**
+		 * Put events that the client missed in front of the live ones. Any live events
+		 * that are also in the replay are dropped.
+		 */
+		private void replay(List<Event> events) {
+			if (events.isEmpty()) {
+				return;
+			}
+			synchronized (this.queue) {
+				long max = events.get(events.size() - 1).getId();
+				while (!this.queue.isEmpty() && this.queue.peekFirst().getId() <= max) {
+					this.queue.pollFirst();
+				}
+				for (int i = events.size(); i-- > 0;) {
+					this.queue.addFirst(events.get(i));
+				}
+				this.last = Math.max(this.last, max);
+			}
+			drain();
+		}
+
+		private void drain() {
+			if (this.actual == null || this.wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				long requested = this.requested.get();
+				long emitted = 0;
+				while (!this.cancelled) {
+					boolean done = this.done;
+					Event item = null;
+					if (emitted != requested) {
+						synchronized (this.queue) {
+							item = this.queue.poll();
+						}
+					}
+					if (item == null) {
+						if (done && isEmpty()) {
+							terminate();
+						}
+						break;
+					}
+					this.actual.onNext(item);
+					emitted++;
+				}
+				if (emitted != 0 && requested != Long.MAX_VALUE) {
+					this.requested.addAndGet(-emitted);
+				}
+				missed = this.wip.addAndGet(-missed);
+			}
+			while (missed != 0);
+		}
+
+		private boolean isEmpty() {
+			synchronized (this.queue) {
+				return this.queue.isEmpty();
+			}
+		}
+
+		private void terminate() {
+			this.cancelled = true;
+			leave();
+			if (this.error != null) {
+				this.actual.onError(this.error);
+			}
+			else {
+				this.actual.onComplete();
+			}
+		}
+
+		private void leave() {
+			if (this.actual != null && this.left.compareAndSet(false, true)) {
+				this.owner.leave();
+			}
+		}
+
+	}
+
+}
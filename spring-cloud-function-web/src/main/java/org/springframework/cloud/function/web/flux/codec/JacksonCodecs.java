@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.codec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Registry of the binary Jackson data formats (CBOR and Smile) that are on the
+ * classpath, keyed by media type. Request bodies and streamed responses in one of these
+ * formats are parsed and written in the same way as JSON, just with a different
+ * {@link ObjectMapper}.
+ *
+ * @author Dave Syer
+ *
+ */
+public class JacksonCodecs {
+
+	public static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
+	public static final MediaType SMILE = MediaType
+			.valueOf("application/x-jackson-smile");
+
+	private static final boolean cborPresent = ClassUtils.isPresent(
+			"com.fasterxml.jackson.dataformat.cbor.CBORFactory",
+			JacksonCodecs.class.getClassLoader());
+
+	private static final boolean smilePresent = ClassUtils.isPresent(
+			"com.fasterxml.jackson.dataformat.smile.SmileFactory",
+			JacksonCodecs.class.getClassLoader());
+
+	private final Map<MediaType, ObjectMapper> mappers = new LinkedHashMap<>();
+
+	public JacksonCodecs() {
+		if (cborPresent) {
+			mappers.put(CBOR, Cbor.mapper());
+		}
+		if (smilePresent) {
+			mappers.put(SMILE, Smile.mapper());
+		}
+	}
+
+	/**
+	 * @param mediaType a content type (e.g. from a request or an accept header)
+	 * @return the binary media type that matches it exactly, or null if there is none
+	 */
+	public MediaType getMediaType(MediaType mediaType) {
+		for (MediaType type : mappers.keySet()) {
+			if (type.equalsTypeAndSubtype(mediaType)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param mediaType a content type (e.g. from a request or an accept header)
+	 * @return a mapper for the binary format, or null if it is not a supported format
+	 */
+	public ObjectMapper getMapper(MediaType mediaType) {
+		MediaType type = getMediaType(mediaType);
+		return type == null ? null : mappers.get(type);
+	}
+
+	/**
+	 * Separate classes so the optional data format classes are only loaded if present.
+	 */
+	private static class Cbor {
+
+		static ObjectMapper mapper() {
+			return new ObjectMapper(new CBORFactory()).findAndRegisterModules();
+		}
+
+	}
+
+	private static class Smile {
+
+		static ObjectMapper mapper() {
+			return new ObjectMapper(new SmileFactory()).findAndRegisterModules();
+		}
+
+	}
+
+}
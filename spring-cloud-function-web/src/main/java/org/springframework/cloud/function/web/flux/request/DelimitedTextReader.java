@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import org.springframework.util.Assert;
+
+/**
+ * Reads records of text separated by a delimiter (e.g. lines) from an input stream. The
+ * bytes are decoded a buffer at a time by a single {@link CharsetDecoder}, so the memory
+ * used depends on the size of a record, not the size of the input.
+ *
+ * @author Dave Syer
+ *
+ */
+class DelimitedTextReader implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final String NEW_LINE = "\n";
+
+	private final InputStream input;
+
+	private final String delimiter;
+
+	private final CharsetDecoder decoder;
+
+	private final ByteBuffer bytes;
+
+	private final CharBuffer chars;
+
+	private final StringBuilder record = new StringBuilder();
+
+	// For each prefix of the delimiter, the length of the longest proper prefix that is
+	// also a suffix of it (as in Knuth-Morris-Pratt)
+	private final int[] failure;
+
+	// The number of characters of the delimiter matched at the end of the record
+	private int matched;
+
+	private boolean eof;
+
+	private boolean flushed;
+
+	public DelimitedTextReader(InputStream input, Charset charset, String delimiter) {
+		this(input, charset, delimiter, DEFAULT_BUFFER_SIZE);
+	}
+
+	public DelimitedTextReader(InputStream input, Charset charset, String delimiter,
+			int size) {
+		Assert.hasLength(delimiter, "Delimiter must not be empty");
+		// Room for the longest encoded character
+		Assert.isTrue(size >= 4, "Buffer size must be at least 4");
+		this.input = input;
+		this.delimiter = delimiter;
+		this.failure = failure(delimiter);
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.bytes = ByteBuffer.allocate(size);
+		this.chars = CharBuffer.allocate(size);
+		// Both buffers start empty and ready to read from
+		this.bytes.flip();
+		this.chars.flip();
+	}
+
+	/**
+	 * @return the next record (without the delimiter), or null if there are no more
+	 * @throws IOException if the input cannot be read
+	 */
+	public String next() throws IOException {
+		while (true) {
+			while (this.chars.hasRemaining()) {
+				char c = this.chars.get();
+				while (this.matched > 0 && c != this.delimiter.charAt(this.matched)) {
+					// Not a delimiter after all, but the end of the partial match might
+					// still be the start of one
+					int fallback = this.failure[this.matched - 1];
+					this.record.append(this.delimiter, 0, this.matched - fallback);
+					this.matched = fallback;
+				}
+				if (c == this.delimiter.charAt(this.matched)) {
+					if (++this.matched == this.delimiter.length()) {
+						this.matched = 0;
+						return take();
+					}
+					continue;
+				}
+				this.record.append(c);
+			}
+			if (!fill()) {
+				if (this.matched > 0) {
+					this.record.append(this.delimiter, 0, this.matched);
+					this.matched = 0;
+				}
+				return this.record.length() > 0 ? take() : null;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.input.close();
+	}
+
+	private static int[] failure(String delimiter) {
+		int[] failure = new int[delimiter.length()];
+		int length = 0;
+		for (int i = 1; i < delimiter.length(); i++) {
+			while (length > 0 && delimiter.charAt(i) != delimiter.charAt(length)) {
+				length = failure[length - 1];
+			}
+			if (delimiter.charAt(i) == delimiter.charAt(length)) {
+				length++;
+			}
+			failure[i] = length;
+		}
+		return failure;
+	}
+
+	private String take() {
+		int length = this.record.length();
+		if (NEW_LINE.equals(this.delimiter) && length > 0
+				&& this.record.charAt(length - 1) == '\r') {
+			length--;
+		}
+		String result = this.record.substring(0, length);
+		this.record.setLength(0);
+		return result;
+	}
+
+	/**
+	 * Decode some more characters into the (empty) character buffer.
+	 *
+	 * @return false if there are no more characters
+	 */
+	private boolean fill() throws IOException {
+		this.chars.clear();
+		while (this.chars.position() == 0 && !this.flushed) {
+			if (!this.eof) {
+				this.bytes.compact();
+				int count = this.input.read(this.bytes.array(),
+						this.bytes.arrayOffset() + this.bytes.position(),
+						this.bytes.remaining());
+				if (count < 0) {
+					this.eof = true;
+				}
+				else {
+					this.bytes.position(this.bytes.position() + count);
+				}
+				this.bytes.flip();
+			}
+			this.decoder.decode(this.bytes, this.chars, this.eof);
+			if (this.eof) {
+				this.decoder.flush(this.chars);
+				this.flushed = true;
+			}
+		}
+		this.chars.flip();
+		return this.chars.hasRemaining();
+	}
+
+}
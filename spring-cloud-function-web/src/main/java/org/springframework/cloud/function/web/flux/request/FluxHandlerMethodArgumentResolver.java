@@ -16,33 +16,53 @@
 
 package org.springframework.cloud.function.web.flux.request;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Publisher;
 
 import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.support.BinaryUtils;
+import org.springframework.cloud.function.web.flux.codec.JacksonCodecs;
 import org.springframework.cloud.function.web.flux.constants.WebRequestConstants;
 import org.springframework.core.MethodParameter;
 import org.springframework.core.Ordered;
 import org.springframework.http.MediaType;
 import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.support.WebDataBinderFactory;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.method.support.ModelAndViewContainer;
-import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
 
 /**
- * Converter for request bodies of type <code>Flux<String></code>.
+ * Converter for request bodies of type <code>Flux<String></code>. JSON arrays and
+ * newline delimited JSON (<code>application/x-ndjson</code>) are parsed incrementally,
+ * so the elements are emitted as they are read from the request. CBOR and Smile bodies
+ * are parsed in the same way as JSON, if the Jackson data formats are on the classpath.
+ * Plain text can be split into records (e.g. lines) that are also emitted as they are
+ * read. Binary input types (<code>byte[]</code>, <code>ByteBuffer</code> and
+ * <code>InputStream</code>) get the raw bytes of the body, in chunks if the function
+ * accepts a <code>Flux</code>.
  * 
  * @author Dave Syer
  *
@@ -53,14 +73,33 @@ public class FluxHandlerMethodArgumentResolver
 	private static Log logger = LogFactory
 			.getLog(FluxHandlerMethodArgumentResolver.class);
 
-	private final ObjectMapper mapper;
+	private static final MediaType NDJSON = MediaType.valueOf("application/x-ndjson");
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ObjectMapper json;
+
+	private final JacksonCodecs codecs = new JacksonCodecs();
 
 	private FunctionInspector inspector;
 
+	private String delimiter;
+
 	public FluxHandlerMethodArgumentResolver(FunctionInspector inspector,
 			ObjectMapper mapper) {
 		this.inspector = inspector;
-		this.mapper = mapper;
+		this.json = mapper;
+	}
+
+	/**
+	 * Delimiter for records in a plain text request body (e.g. a new line). If set then
+	 * a body is read incrementally and each record is a separate input to the function,
+	 * otherwise the whole body is a single input.
+	 * 
+	 * @param delimiter the delimiter to set
+	 */
+	public void setDelimiter(String delimiter) {
+		this.delimiter = delimiter;
 	}
 
 	@Override
@@ -74,33 +113,181 @@ public class FluxHandlerMethodArgumentResolver
 			WebDataBinderFactory binderFactory) throws Exception {
 		Object handler = webRequest.getAttribute(WebRequestConstants.HANDLER,
 				NativeWebRequest.SCOPE_REQUEST);
-		Class<?> type = inspector.getInputType(inspector.getName(handler));
+		String name = inspector.getName(handler);
+		Class<?> type = inspector.getInputType(name);
 		if (type == null) {
 			type = Object.class;
 		}
-		List<Object> body;
-		ContentCachingRequestWrapper nativeRequest = new ContentCachingRequestWrapper(
-				webRequest.getNativeRequest(HttpServletRequest.class));
+		HttpServletRequest nativeRequest = webRequest
+				.getNativeRequest(HttpServletRequest.class);
 		if (logger.isDebugEnabled()) {
 			logger.debug("Resolving request body into type: " + type);
 		}
+		if (BinaryUtils.isBinary(type)) {
+			// Raw bytes, not serialized at all
+			Class<?> wrapper = inspector.getInputWrapper(name);
+			if (wrapper != null && Publisher.class.isAssignableFrom(wrapper)) {
+				return new FluxRequest<Object>(
+						BinaryUtils.chunks(nativeRequest.getInputStream(), type));
+			}
+			nativeRequest.setAttribute(WebRequestConstants.INPUT_SINGLE, true);
+			return new FluxRequest<Object>(Collections.singletonList(
+					BinaryUtils.read(nativeRequest.getInputStream(), type)));
+		}
 		if (isPlainText(webRequest) && CharSequence.class.isAssignableFrom(type)) {
-			body = Arrays.asList(StreamUtils.copyToString(nativeRequest.getInputStream(),
-					Charset.forName("UTF-8")));
+			Charset charset = findCharset(webRequest);
+			if (StringUtils.hasLength(delimiter)) {
+				// One record per delimiter (e.g. line), decoded as they are read
+				return new FluxRequest<Object>(text(new DelimitedTextReader(
+						nativeRequest.getInputStream(), charset, delimiter)));
+			}
+			return new FluxRequest<Object>(Arrays.asList(StreamUtils
+					.copyToString(nativeRequest.getInputStream(), charset)));
+		}
+		if (isLines(webRequest)) {
+			// Newline delimited JSON: one value per line, decoded as they are read
+			return new FluxRequest<Object>(lines(
+					json.getFactory().createParser(nativeRequest.getInputStream()),
+					json.readerFor(type)));
 		}
-		else {
+		// A binary format (e.g. CBOR) has the same structure as JSON
+		ObjectMapper mapper = findMapper(webRequest);
+		if (Collection.class.isAssignableFrom(type) || type.isArray()) {
+			// Can't tell a single value from a stream of values by looking at the first
+			// token, so read the whole body
+			return new FluxRequest<Object>(readCollection(mapper, nativeRequest, type));
+		}
+		JsonParser parser = mapper.getFactory()
+				.createParser(nativeRequest.getInputStream());
+		ObjectReader reader = mapper.readerFor(type);
+		JsonToken token = parser.nextToken();
+		if (token == null) {
+			parser.close();
+			return new FluxRequest<Object>(Flux.empty());
+		}
+		if (token != JsonToken.START_ARRAY) {
 			try {
-				body = mapper.readValue(nativeRequest.getInputStream(),
-						mapper.getTypeFactory()
-								.constructCollectionLikeType(ArrayList.class, type));
-			}
-			catch (JsonMappingException e) {
 				nativeRequest.setAttribute(WebRequestConstants.INPUT_SINGLE, true);
-				body = Arrays.asList(
-						mapper.readValue(nativeRequest.getContentAsByteArray(), type));
+				return new FluxRequest<Object>(
+						Collections.singletonList(reader.readValue(parser)));
+			}
+			finally {
+				parser.close();
 			}
 		}
-		return new FluxRequest<Object>(body);
+		return new FluxRequest<Object>(stream(parser, reader));
+	}
+
+	/**
+	 * Emit the elements of a JSON array as they are parsed, starting with the parser
+	 * positioned on the opening bracket.
+	 */
+	private Flux<Object> stream(JsonParser parser, ObjectReader reader) {
+		return Flux.generate(() -> parser,
+				(JsonParser state, SynchronousSink<Object> sink) -> {
+					try {
+						if (state.nextToken() == JsonToken.END_ARRAY) {
+							sink.complete();
+						}
+						else {
+							sink.next(reader.readValue(state));
+						}
+					}
+					catch (IOException e) {
+						sink.error(e);
+					}
+					return state;
+				}, this::close);
+	}
+
+	/**
+	 * Emit a sequence of root-level JSON values (e.g. one per line) as they are parsed.
+	 */
+	private Flux<Object> lines(JsonParser parser, ObjectReader reader) {
+		return Flux.generate(() -> parser,
+				(JsonParser state, SynchronousSink<Object> sink) -> {
+					try {
+						if (state.nextToken() == null) {
+							sink.complete();
+						}
+						else {
+							sink.next(reader.readValue(state));
+						}
+					}
+					catch (IOException e) {
+						sink.error(e);
+					}
+					return state;
+				}, this::close);
+	}
+
+	/**
+	 * Emit the records in a plain text body as they are read.
+	 */
+	private Flux<Object> text(DelimitedTextReader reader) {
+		return Flux.generate(() -> reader,
+				(DelimitedTextReader state, SynchronousSink<Object> sink) -> {
+					try {
+						String record = state.next();
+						if (record == null) {
+							sink.complete();
+						}
+						else {
+							sink.next(record);
+						}
+					}
+					catch (IOException e) {
+						sink.error(e);
+					}
+					return state;
+				}, this::close);
+	}
+
+	private void close(Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (IOException e) {
+			logger.debug("Cannot close request body", e);
+		}
+	}
+
+	private List<Object> readCollection(ObjectMapper mapper, HttpServletRequest request,
+			Class<?> type) throws IOException {
+		byte[] bytes = StreamUtils.copyToByteArray(request.getInputStream());
+		try {
+			return mapper.readValue(bytes, mapper.getTypeFactory()
+					.constructCollectionLikeType(ArrayList.class, type));
+		}
+		catch (JsonMappingException e) {
+			request.setAttribute(WebRequestConstants.INPUT_SINGLE, true);
+			return Arrays.asList(mapper.readValue(bytes, type));
+		}
+	}
+
+	private ObjectMapper findMapper(NativeWebRequest webRequest) {
+		String value = webRequest.getHeader("Content-Type");
+		if (value != null) {
+			ObjectMapper mapper = codecs.getMapper(MediaType.valueOf(value));
+			if (mapper != null) {
+				return mapper;
+			}
+		}
+		return json;
+	}
+
+	private Charset findCharset(NativeWebRequest webRequest) {
+		Charset charset = MediaType.valueOf(webRequest.getHeader("Content-Type"))
+				.getCharset();
+		return charset == null ? UTF_8 : charset;
+	}
+
+	private boolean isLines(NativeWebRequest webRequest) {
+		String value = webRequest.getHeader("Content-Type");
+		if (value != null) {
+			return NDJSON.isCompatibleWith(MediaType.valueOf(value));
+		}
+		return false;
 	}
 
 	private boolean isPlainText(NativeWebRequest webRequest) {
@@ -26,18 +26,28 @@ import reactor.core.publisher.Flux;
  */
 public class FluxRequest<T> {
 	
-	private List<T> body;
+	private final Flux<T> body;
 
 	public FluxRequest(List<T> body) {
+		this(Flux.fromIterable(body));
+	}
+
+	public FluxRequest(Flux<T> body) {
 		this.body = body;
 	}
 
 	public Flux<T> flux() {
-		return Flux.fromIterable(body);
+		return body;
 	}
-	
+
+	/**
+	 * Collect all the items in the request body. N.B. this blocks until the whole body
+	 * has been read, so prefer {@link #flux()}.
+	 * 
+	 * @return the items in the body
+	 */
 	public List<T> body() {
-		return body;
+		return body.collectList().block();
 	}
 	
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntConsumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Serializes a stream of values as JSON, or one of the binary Jackson data formats
+ * (either a single array, one value per line, or just the values), into a buffer that is
+ * sent to a {@link ResponseBodyEmitter} in chunks. A chunk is sent when the buffer
+ * reaches a size threshold, or after a short window if the buffer is not empty, so many
+ * small values cost one write instead of one each. A full chunk is handed to the emitter
+ * as it is (not copied), and the next values go into a new one. Chunks are sent in order,
+ * but not while holding the lock that serializes values, and a listener is told how many
+ * values were in each chunk once it has been sent. A chunk that is sent at the end of a
+ * window is sent from an elastic worker, since the emitter blocks until the client has
+ * received it.
+ *
+ * @author Dave Syer
+ *
+ */
+class CoalescingJsonWriter {
+
+	private static Log logger = LogFactory.getLog(CoalescingJsonWriter.class);
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	public static final Duration DEFAULT_WINDOW = Duration.ofMillis(10);
+
+	private final ResponseBodyEmitter emitter;
+
+	private final MediaType mediaType;
+
+	private final Framing framing;
+
+	private final boolean text;
+
+	private final int size;
+
+	private final Duration window;
+
+	private final JsonGenerator generator;
+
+	private final Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+
+	private final Object sending = new Object();
+
+	private Chunk chunk;
+
+	private IntConsumer listener = count -> {
+	};
+
+	private boolean scheduled;
+
+	private boolean closed;
+
+	public CoalescingJsonWriter(ObjectMapper mapper, ResponseBodyEmitter emitter,
+			MediaType mediaType, Framing framing) {
+		this(mapper, emitter, mediaType, framing, DEFAULT_BUFFER_SIZE, DEFAULT_WINDOW);
+	}
+
+	public CoalescingJsonWriter(ObjectMapper mapper, ResponseBodyEmitter emitter,
+			MediaType mediaType, Framing framing, int size, Duration window) {
+		this.emitter = emitter;
+		this.mediaType = mediaType;
+		this.framing = framing;
+		this.text = JsonFactory.FORMAT_NAME_JSON
+				.equals(mapper.getFactory().getFormatName());
+		this.size = size;
+		this.window = window;
+		this.chunk = new Chunk(size);
+		try {
+			this.generator = mapper.getFactory().createGenerator(new Target());
+			this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			if (this.text) {
+				this.generator.setRootValueSeparator(null);
+			}
+			if (framing == Framing.ARRAY) {
+				this.generator.writeStartArray();
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot create JSON generator", e);
+		}
+	}
+
+	/**
+	 * @param listener a callback for the number of values in each chunk after it has
+	 * been sent
+	 */
+	public void setListener(IntConsumer listener) {
+		this.listener = listener;
+	}
+
+	public void write(Object value) throws IOException {
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			if (this.text && this.framing == Framing.ARRAY && value instanceof String
+					&& ((String) value).contains("\"")) {
+				// Assume it is already JSON
+				this.generator.writeRawValue((String) value);
+			}
+			else {
+				this.generator.writeObject(value);
+			}
+			if (this.framing == Framing.LINES) {
+				this.generator.writeRaw('\n');
+			}
+			this.generator.flush();
+			this.chunk.values++;
+			if (this.chunk.size() >= this.size) {
+				detach();
+			}
+			else if (!this.scheduled) {
+				this.scheduled = true;
+				Mono.delay(this.window).publishOn(Schedulers.elastic())
+						.subscribe(tick -> expire());
+			}
+		}
+		drain();
+	}
+
+	/**
+	 * Send whatever is buffered, and end the array (if there is one). When this returns
+	 * all the chunks have been sent.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			if (this.framing == Framing.ARRAY) {
+				this.generator.writeEndArray();
+			}
+			this.generator.close();
+			detach();
+			this.closed = true;
+		}
+		drain();
+	}
+
+	private void expire() {
+		synchronized (this) {
+			this.scheduled = false;
+			if (this.closed) {
+				return;
+			}
+			try {
+				this.generator.flush();
+			}
+			catch (IOException e) {
+				// Cannot happen: the target is in memory
+				throw new IllegalStateException("Cannot flush JSON generator", e);
+			}
+			detach();
+		}
+		try {
+			drain();
+		}
+		catch (Exception e) {
+			logger.error("Cannot send buffered response", e);
+			this.emitter.completeWithError(e);
+		}
+	}
+
+	/**
+	 * Queue the current chunk (if it is not empty) to be sent, and start a new one. Only
+	 * called while holding the lock, so chunks are queued in the order they were
+	 * written.
+	 */
+	private void detach() {
+		if (this.chunk.size() > 0) {
+			this.chunks.add(this.chunk);
+			this.chunk = new Chunk(this.size);
+		}
+	}
+
+	/**
+	 * Send the queued chunks, in order. Only one thread sends at a time, and if another
+	 * is already sending then this one waits for it, so when this returns the chunks
+	 * queued before it was called have all been sent.
+	 */
+	private void drain() throws IOException {
+		synchronized (this.sending) {
+			Chunk next;
+			while ((next = this.chunks.poll()) != null) {
+				this.emitter.send(new InputStreamResource(next.getInputStream()),
+						this.mediaType);
+				this.listener.accept(next.values);
+			}
+		}
+	}
+
+	/**
+	 * The output for the JSON generator: whichever chunk is current.
+	 */
+	private class Target extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			CoalescingJsonWriter.this.chunk.write(b);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			CoalescingJsonWriter.this.chunk.write(bytes, offset, length);
+		}
+
+	}
+
+	/**
+	 * A buffer for serialized values that can be read without copying it.
+	 */
+	private static final class Chunk extends ByteArrayOutputStream {
+
+		private int values;
+
+		private Chunk(int size) {
+			super(size);
+		}
+
+		private ByteArrayInputStream getInputStream() {
+			return new ByteArrayInputStream(this.buf, 0, this.count);
+		}
+
+	}
+
+	/**
+	 * How the values are delimited in the output.
+	 */
+	enum Framing {
+
+		/**
+		 * Values are elements of a single array.
+		 */
+		ARRAY,
+
+		/**
+		 * Values are followed by a new line (only makes sense for JSON).
+		 */
+		LINES,
+
+		/**
+		 * Values are written one after another (e.g. for a single value).
+		 */
+		NONE
+
+	}
+
+}
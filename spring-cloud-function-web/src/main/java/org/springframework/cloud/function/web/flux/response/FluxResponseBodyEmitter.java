@@ -16,8 +16,11 @@
 
 package org.springframework.cloud.function.web.flux.response;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.reactivestreams.Publisher;
 
+import org.springframework.cloud.function.web.flux.response.CoalescingJsonWriter.Framing;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.server.ServerHttpResponse;
@@ -34,15 +37,33 @@ class FluxResponseBodyEmitter<T> extends ResponseBodyEmitter {
 
 	private final MediaType mediaType;
 
+	private final ResponseBodyEmitterSubscriber<T> subscriber;
+
 	public FluxResponseBodyEmitter(Publisher<T> observable) {
 		this(null, observable);
 	}
 
 	public FluxResponseBodyEmitter(MediaType mediaType, Publisher<T> observable) {
+		this(mediaType, observable, null, null,
+				ResponseBodyEmitterSubscriber.DEFAULT_HIGH_WATER_MARK);
+	}
+
+	/**
+	 * Create an emitter with at most <code>highWaterMark</code> items in flight. If a
+	 * mapper is provided then the values are serialized in buffered chunks, delimited
+	 * according to the framing.
+	 */
+	public FluxResponseBodyEmitter(MediaType mediaType, Publisher<T> observable,
+			ObjectMapper mapper, Framing framing, int highWaterMark) {
 		super();
 		this.mediaType = mediaType;
-		new ResponseBodyEmitterSubscriber<>(mediaType, observable, this,
-				MediaType.APPLICATION_JSON.isCompatibleWith(mediaType));
+		CoalescingJsonWriter writer = null;
+		if (mapper != null) {
+			writer = new CoalescingJsonWriter(mapper, this, mediaType, framing);
+		}
+		this.subscriber = new ResponseBodyEmitterSubscriber<>(mediaType, observable,
+				this, MediaType.APPLICATION_JSON.isCompatibleWith(mediaType), writer,
+				highWaterMark);
 	}
 
 	@Override
@@ -55,4 +76,20 @@ class FluxResponseBodyEmitter<T> extends ResponseBodyEmitter {
 			headers.setContentType(this.mediaType);
 		}
 	}
+
+	/**
+	 * @param idleTimeout the time (in milliseconds) that the publisher can take to
+	 * produce an item it owes before the response is completed (0 for no limit)
+	 */
+	void setIdleTimeout(long idleTimeout) {
+		this.subscriber.setIdleTimeout(idleTimeout);
+	}
+
+	/**
+	 * Start requesting items. Must not be called until the emitter has been initialized
+	 * (otherwise everything is buffered in memory until it is).
+	 */
+	void start() {
+		this.subscriber.start();
+	}
 }
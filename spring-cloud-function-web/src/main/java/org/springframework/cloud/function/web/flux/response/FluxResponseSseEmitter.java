@@ -36,9 +36,34 @@ class FluxResponseSseEmitter<T> extends SseEmitter {
 		this(MediaType.valueOf("text/plain"), observable);
 	}
 
+	private final ResponseBodyEmitterSubscriber<T> subscriber;
+
 	public FluxResponseSseEmitter(MediaType mediaType, Publisher<T> observable) {
+		this(mediaType, observable,
+				ResponseBodyEmitterSubscriber.DEFAULT_HIGH_WATER_MARK);
+	}
+
+	public FluxResponseSseEmitter(MediaType mediaType, Publisher<T> observable,
+			int highWaterMark) {
 		super();
-		new ResponseBodyEmitterSubscriber<>(mediaType, observable, this, false);
+		this.subscriber = new ResponseBodyEmitterSubscriber<>(mediaType, observable,
+				this, false, null, highWaterMark);
+	}
+
+	/**
+	 * @param idleTimeout the time (in milliseconds) that the publisher can take to
+	 * produce an item it owes before the response is completed (0 for no limit)
+	 */
+	void setIdleTimeout(long idleTimeout) {
+		this.subscriber.setIdleTimeout(idleTimeout);
+	}
+
+	/**
+	 * Start requesting items. Must not be called until the emitter has been initialized
+	 * (otherwise everything is buffered in memory until it is).
+	 */
+	void start() {
+		this.subscriber.start();
 	}
 
 }
@@ -16,32 +16,40 @@
 
 package org.springframework.cloud.function.web.flux.response;
 
-import java.lang.reflect.Method;
-import java.time.Duration;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import javax.servlet.http.HttpServletResponse;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.el.stream.Optional;
 import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
 
 import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.support.BinaryUtils;
+import org.springframework.cloud.function.web.flux.codec.JacksonCodecs;
 import org.springframework.cloud.function.web.flux.constants.WebRequestConstants;
+import org.springframework.cloud.function.web.flux.response.CoalescingJsonWriter.Framing;
 import org.springframework.core.MethodParameter;
 import org.springframework.core.ResolvableType;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageConverter;
-import org.springframework.util.ReflectionUtils;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.method.support.AsyncHandlerMethodReturnValueHandler;
 import org.springframework.web.method.support.ModelAndViewContainer;
-import org.springframework.web.servlet.mvc.method.annotation.RequestResponseBodyMethodProcessor;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
 
@@ -59,30 +67,41 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 	private static Log logger = LogFactory.getLog(FluxReturnValueHandler.class);
 
 	private ResponseBodyEmitterReturnValueHandler delegate;
-	private RequestResponseBodyMethodProcessor single;
 	private long timeout = 1000L;
+	private long resultTimeout = 30000L;
+	private int highWaterMark = ResponseBodyEmitterSubscriber.DEFAULT_HIGH_WATER_MARK;
 	private static final MediaType EVENT_STREAM = MediaType.valueOf("text/event-stream");
+	private static final MediaType NDJSON = MediaType.valueOf("application/x-ndjson");
+	private static final MediaType NDJSON_UTF8 = MediaType
+			.valueOf("application/x-ndjson;charset=UTF-8");
 
-	private FunctionInspector inspector;
+	private ObjectMapper mapper;
+
+	private final JacksonCodecs codecs = new JacksonCodecs();
 
-	private MethodParameter singleReturnType;
+	private FunctionInspector inspector;
 
 	public FluxReturnValueHandler(FunctionInspector inspector,
 			List<HttpMessageConverter<?>> messageConverters) {
 		this.inspector = inspector;
 		this.delegate = new ResponseBodyEmitterReturnValueHandler(messageConverters);
-		this.single = new RequestResponseBodyMethodProcessor(messageConverters);
-		Method method = ReflectionUtils.findMethod(getClass(), "singleValue");
-		singleReturnType = new MethodParameter(method, -1);
+		this.mapper = findObjectMapper(messageConverters);
 	}
 
-	ResponseEntity<Object> singleValue() {
-		return null;
+	private ObjectMapper findObjectMapper(List<HttpMessageConverter<?>> converters) {
+		for (HttpMessageConverter<?> converter : converters) {
+			if (converter instanceof MappingJackson2HttpMessageConverter) {
+				return ((MappingJackson2HttpMessageConverter) converter)
+						.getObjectMapper();
+			}
+		}
+		return new ObjectMapper();
 	}
 
 	/**
-	 * Timeout for clients. If no items are seen on an HTTP response in this period then
-	 * the response is closed.
+	 * Timeout for streams. If the publisher produces no items in this period, while the
+	 * response is ready for more, then the response is closed. The time spent waiting
+	 * for a slow client does not count.
 	 * 
 	 * @param timeout the timeout to set
 	 */
@@ -90,6 +109,27 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 		this.timeout = timeout;
 	}
 
+	/**
+	 * Timeout for a single result. If the function has not produced it in this period
+	 * then the request fails (with a 503 by default).
+	 * 
+	 * @param resultTimeout the result timeout to set in milliseconds
+	 */
+	public void setResultTimeout(long resultTimeout) {
+		this.resultTimeout = resultTimeout;
+	}
+
+	/**
+	 * Maximum number of items to request from a streaming result before they have been
+	 * written to the HTTP response. A slow client then slows down the producer, instead
+	 * of items accumulating in memory.
+	 * 
+	 * @param highWaterMark the high water mark to set
+	 */
+	public void setHighWaterMark(int highWaterMark) {
+		this.highWaterMark = highWaterMark;
+	}
+
 	@Override
 	public boolean isAsyncReturnValue(Object returnValue, MethodParameter returnType) {
 		if (returnValue != null) {
@@ -137,14 +177,9 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 
 		Object handler = webRequest.getAttribute(WebRequestConstants.HANDLER,
 				NativeWebRequest.SCOPE_REQUEST);
-		Class<?> type = inspector.getOutputType(inspector.getName(handler));
-
-		boolean inputSingle = isInputSingle(webRequest, handler);
-		if (inputSingle && isOutputSingle(handler)) {
-			single.handleReturnValue(Flux.from(flux).blockFirst(), singleReturnType,
-					mavContainer, webRequest);
-			return;
-		}
+		// No handler for a batch of invocations, which is always a stream
+		Class<?> type = handler == null ? Object.class
+				: inspector.getOutputType(inspector.getName(handler));
 
 		MediaType mediaType = null;
 		if (isPlainText(webRequest) && CharSequence.class.isAssignableFrom(type)) {
@@ -153,12 +188,80 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 		else {
 			mediaType = findMediaType(webRequest);
 		}
+		if (BinaryUtils.isBinary(type)) {
+			// Raw bytes, written by the byte array or resource message converters
+			flux = flux instanceof Mono ? Mono.from(flux).map(this::binary)
+					: Flux.from(flux).map(this::binary);
+			if (!isBinaryMediaType(mediaType)) {
+				mediaType = MediaType.APPLICATION_OCTET_STREAM;
+			}
+		}
+
+		boolean inputSingle = handler != null && isInputSingle(webRequest, handler);
+		if (inputSingle && isOutputSingle(handler)) {
+			if (codecs.getMediaType(mediaType) == null) {
+				// Release the container thread: the result is dispatched back to MVC,
+				// and rendered by the message converters, when it arrives
+				DeferredResult<Object> result = new DeferredResult<>(resultTimeout);
+				AtomicReference<Subscription> subscription = new AtomicReference<>();
+				// Stop the function if nobody is waiting for the result any more
+				Runnable cancel = () -> {
+					Subscription current = subscription.get();
+					if (current != null) {
+						current.cancel();
+					}
+				};
+				result.onTimeout(cancel);
+				result.onCompletion(cancel);
+				Mono.from(flux).doOnSubscribe(subscription::set).subscribe(
+						value -> result.setResult(value),
+						error -> result.setErrorResult(error),
+						() -> result.setResult(null));
+				WebAsyncUtils.getAsyncManager(webRequest)
+						.startDeferredResultProcessing(result, mavContainer);
+				return;
+			}
+			// The message converters do not support the binary formats
+			flux = Mono.from(flux);
+		}
+
 		if (logger.isDebugEnabled()) {
 			logger.debug(
 					"Handling return value " + type + " with media type: " + mediaType);
 		}
-		delegate.handleReturnValue(getEmitter(timeout, flux, mediaType), returnType,
-				mavContainer, webRequest);
+		ResponseBodyEmitter emitter = getEmitter(flux, mediaType);
+		delegate.handleReturnValue(emitter, returnType, mavContainer, webRequest);
+		// The emitter is initialized now, so items are written as they arrive
+		start(emitter, flux instanceof Mono ? 0 : timeout);
+	}
+
+	private void start(ResponseBodyEmitter emitter, long idleTimeout) {
+		if (emitter instanceof FluxResponseSseEmitter) {
+			FluxResponseSseEmitter<?> sse = (FluxResponseSseEmitter<?>) emitter;
+			sse.setIdleTimeout(idleTimeout);
+			sse.start();
+		}
+		else if (emitter instanceof FluxResponseBodyEmitter) {
+			FluxResponseBodyEmitter<?> body = (FluxResponseBodyEmitter<?>) emitter;
+			body.setIdleTimeout(idleTimeout);
+			body.start();
+		}
+	}
+
+	private Object binary(Object value) {
+		if (value instanceof InputStream) {
+			// Streamed to the response without reading it all into memory
+			return new InputStreamResource((InputStream) value);
+		}
+		return BinaryUtils.toByteArray(value);
+	}
+
+	private boolean isBinaryMediaType(MediaType mediaType) {
+		return !MediaType.ALL.equals(mediaType)
+				&& !MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)
+				&& !NDJSON.isCompatibleWith(mediaType)
+				&& !EVENT_STREAM.isCompatibleWith(mediaType)
+				&& codecs.getMediaType(mediaType) == null;
 	}
 
 	private boolean isInputSingle(NativeWebRequest webRequest, Object handler) {
@@ -192,6 +295,15 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 		if (webRequest.getHeader("Accept") != null) {
 			accepts = MediaType.parseMediaTypes(webRequest.getHeader("Accept"));
 			for (MediaType accept : accepts) {
+				MediaType binary = codecs.getMediaType(accept);
+				if (binary != null) {
+					mediaType = binary;
+					break;
+				}
+				if (NDJSON.equalsTypeAndSubtype(accept)) {
+					mediaType = NDJSON_UTF8;
+					break;
+				}
 				if (!MediaType.ALL.equals(accept)
 						&& MediaType.APPLICATION_JSON.isCompatibleWith(accept)) {
 					mediaType = MediaType.APPLICATION_JSON;
@@ -217,16 +329,31 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 		return false;
 	}
 
-	private ResponseBodyEmitter getEmitter(Long timeout, Publisher<?> flux,
-			MediaType mediaType) {
-		Publisher<?> exported = flux instanceof Mono ? Mono.from(flux)
-				: Flux.from(flux).timeout(Duration.ofMillis(timeout), Flux.empty());
+	private ResponseBodyEmitter getEmitter(Publisher<?> flux, MediaType mediaType) {
+		Publisher<?> exported = flux instanceof Mono ? Mono.from(flux) : Flux.from(flux);
 		if (!MediaType.ALL.equals(mediaType)
 				&& EVENT_STREAM.isCompatibleWith(mediaType)) {
 			// TODO: more subtle content negotiation
-			return new FluxResponseSseEmitter<>(MediaType.APPLICATION_JSON, exported);
+			return new FluxResponseSseEmitter<>(MediaType.APPLICATION_JSON, exported,
+					highWaterMark);
+		}
+		ObjectMapper binary = codecs.getMapper(mediaType);
+		if (binary != null) {
+			return new FluxResponseBodyEmitter<>(mediaType, exported, binary,
+					exported instanceof Mono ? Framing.NONE : Framing.ARRAY,
+					highWaterMark);
+		}
+		if (NDJSON.equalsTypeAndSubtype(mediaType)) {
+			return new FluxResponseBodyEmitter<>(mediaType, exported, mapper,
+					Framing.LINES, highWaterMark);
+		}
+		if (MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)
+				&& !(exported instanceof Mono)) {
+			return new FluxResponseBodyEmitter<>(mediaType, exported, mapper,
+					Framing.ARRAY, highWaterMark);
 		}
-		return new FluxResponseBodyEmitter<>(mediaType, exported);
+		return new FluxResponseBodyEmitter<>(mediaType, exported, null, null,
+				highWaterMark);
 	}
 
 }
@@ -17,17 +17,23 @@
 package org.springframework.cloud.function.web.flux.response;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
+import org.springframework.cloud.function.web.flux.support.Event;
 import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Subscriber that emits any value produced by the {@link Flux} into the delegated
@@ -37,13 +43,15 @@ import reactor.core.publisher.Mono;
  */
 class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 
+	public static final int DEFAULT_HIGH_WATER_MARK = 256;
+
 	private final MediaType mediaType;
 
 	private Subscription subscription;
 
 	private final ResponseBodyEmitter responseBodyEmitter;
 
-	private boolean completed;
+	private volatile boolean completed;
 
 	private boolean firstElementWritten;
 
@@ -51,12 +59,56 @@ class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 
 	private boolean json;
 
+	private CoalescingJsonWriter writer;
+
+	private final int highWaterMark;
+
+	private int outstanding;
+
+	private boolean started;
+
+	// Idle timeout in nanoseconds (0 for none)
+	private long idleTimeout;
+
+	// Items requested and not yet received
+	private long pending;
+
+	// True while an item is being written
+	private boolean busy;
+
+	private long deadline;
+
+	private boolean armed;
+
+	// Serializes the writes of items with the completion of the response on timeout
+	private final Object emitting = new Object();
+
 	public ResponseBodyEmitterSubscriber(MediaType mediaType, Publisher<T> observable,
 			ResponseBodyEmitter responseBodyEmitter, boolean json) {
+		this(mediaType, observable, responseBodyEmitter, json, null,
+				DEFAULT_HIGH_WATER_MARK);
+	}
 
+	/**
+	 * @param writer if not null then values are serialized as JSON by this writer,
+	 * instead of being sent individually to the emitter
+	 * @param highWaterMark the maximum number of items requested from the publisher and
+	 * not yet written to the response
+	 */
+	public ResponseBodyEmitterSubscriber(MediaType mediaType, Publisher<T> observable,
+			ResponseBodyEmitter responseBodyEmitter, boolean json,
+			CoalescingJsonWriter writer, int highWaterMark) {
+
+		Assert.isTrue(highWaterMark > 0, "High water mark must be positive");
 		this.mediaType = mediaType;
 		this.responseBodyEmitter = responseBodyEmitter;
 		this.json = json;
+		this.writer = writer;
+		this.highWaterMark = highWaterMark;
+		if (writer != null) {
+			// Items are only written when the chunk they are in has been sent
+			writer.setListener(this::written);
+		}
 		this.responseBodyEmitter.onTimeout(new Timeout());
 		this.responseBodyEmitter.onCompletion(new Complete());
 		this.single = observable instanceof Mono;
@@ -66,15 +118,141 @@ class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 	@Override
 	public void onSubscribe(Subscription subscription) {
 		this.subscription = subscription;
-		subscription.request(Long.MAX_VALUE);
+		request();
+	}
+
+	/**
+	 * Complete the response if the publisher produces nothing for this long while it has
+	 * outstanding demand. The time spent waiting for a slow client does not count, since
+	 * the publisher has no demand (or is waiting for a write) then.
+	 *
+	 * @param idleTimeout the idle timeout in milliseconds (0 for none)
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+	}
+
+	/**
+	 * Signal that the emitter is attached to the response. Until then anything sent is
+	 * buffered in memory by the emitter, so no demand is signalled before this is called.
+	 */
+	public void start() {
+		synchronized (this) {
+			this.started = true;
+		}
+		request();
+	}
+
+	/**
+	 * Top up the demand to the high water mark once at least half of it has been
+	 * written. The emitter writes and flushes each item before <code>send()</code>
+	 * returns, so a slow client holds back the publisher instead of building a backlog.
+	 */
+	private void request() {
+		long demand;
+		synchronized (this) {
+			if (this.subscription == null || !this.started || this.completed
+					|| this.outstanding > this.highWaterMark / 2) {
+				return;
+			}
+			demand = this.highWaterMark - this.outstanding;
+			this.outstanding = this.highWaterMark;
+			if (this.pending == 0) {
+				// The publisher starts to owe items now
+				this.deadline = System.nanoTime() + this.idleTimeout;
+			}
+			this.pending += demand;
+			arm(this.idleTimeout);
+		}
+		this.subscription.request(demand);
+	}
+
+	private synchronized void arm(long delay) {
+		if (this.idleTimeout <= 0 || this.armed || this.completed) {
+			return;
+		}
+		this.armed = true;
+		// The timeout writes to the response, so it must not block the timer thread
+		Mono.delay(Duration.ofNanos(delay)).publishOn(Schedulers.elastic())
+				.subscribe(tick -> expire());
+	}
+
+	private void expire() {
+		synchronized (this) {
+			this.armed = false;
+			if (this.completed || this.pending <= 0) {
+				// Nothing is owed, so the publisher is not idle
+				return;
+			}
+			long remaining = this.busy ? this.idleTimeout
+					: this.deadline - System.nanoTime();
+			if (remaining > 0) {
+				arm(remaining);
+				return;
+			}
+		}
+		// The publisher had demand and produced nothing for the whole timeout
+		this.subscription.cancel();
+		onComplete();
+	}
+
+	private synchronized void received() {
+		this.pending--;
+		this.busy = true;
+	}
+
+	private synchronized void idle() {
+		this.busy = false;
+		this.deadline = System.nanoTime() + this.idleTimeout;
+	}
+
+	private void written() {
+		written(1);
+	}
+
+	private void written(int count) {
+		synchronized (this) {
+			this.outstanding -= count;
+		}
+		request();
 	}
 
 	@Override
 	public void onNext(T value) {
+		received();
+		try {
+			synchronized (this.emitting) {
+				emit(value);
+			}
+		}
+		finally {
+			idle();
+		}
+	}
+
+	private void emit(T value) {
 
 		Object object = value;
 
 		try {
+			if (value instanceof Event) {
+				Event event = (Event) value;
+				if (responseBodyEmitter instanceof SseEmitter) {
+					// Send the id so a client that reconnects can resume from there
+					if (!completed) {
+						((SseEmitter) responseBodyEmitter).send(SseEmitter.event()
+								.id(String.valueOf(event.getId()))
+								.data(event.getValue(), mediaType));
+					}
+					written();
+					return;
+				}
+				object = event.getValue();
+			}
+			if (writer != null) {
+				writer.write(object);
+				return;
+			}
 			if (isJson()) {
 				if (!this.firstElementWritten) {
 					if (!single) {
@@ -85,14 +263,15 @@ class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 				else {
 					responseBodyEmitter.send(",");
 				}
-				if (!single && value.getClass() == String.class
-						&& !((String) value).contains("\"")) {
-					object = "\"" + value + "\"";
+				if (!single && object.getClass() == String.class
+						&& !((String) object).contains("\"")) {
+					object = "\"" + object + "\"";
 				}
 			}
 			if (!completed) {
 				responseBodyEmitter.send(object, mediaType);
 			}
+			written();
 		}
 		catch (
 
@@ -103,10 +282,19 @@ class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 
 	@Override
 	public void onError(Throwable e) {
+		synchronized (this.emitting) {
+			error(e);
+		}
+	}
+
+	private void error(Throwable e) {
 		if (!completed) {
 			completed = true;
 			try {
-				if (isJson()) {
+				if (writer != null) {
+					writer.close();
+				}
+				else if (isJson()) {
 					if (!single) {
 						if (!this.firstElementWritten) {
 							responseBodyEmitter.send("[]");
@@ -131,10 +319,19 @@ class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 
 	@Override
 	public void onComplete() {
+		synchronized (this.emitting) {
+			complete();
+		}
+	}
+
+	private void complete() {
 		if (!completed) {
 			completed = true;
 			try {
-				if (isJson()) {
+				if (writer != null) {
+					writer.close();
+				}
+				else if (isJson()) {
 					if (!single) {
 						if (!this.firstElementWritten) {
 							responseBodyEmitter.send("[");
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.support;
+
+/**
+ * An item from a shared supplier, with an id that is greater than the ids of all the
+ * items before it. Server sent events carry the id, so a client that reconnects can
+ * resume from there.
+ *
+ * @author Dave Syer
+ *
+ */
+public final class Event {
+
+	private final long id;
+
+	private final Object value;
+
+	private final long timestamp;
+
+	public Event(long id, Object value) {
+		this.id = id;
+		this.value = value;
+		this.timestamp = System.nanoTime();
+	}
+
+	public long getId() {
+		return this.id;
+	}
+
+	public Object getValue() {
+		return this.value;
+	}
+
+	/**
+	 * @return when the event was created (from {@link System#nanoTime()})
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+}
@@ -26,6 +26,10 @@ import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 import org.junit.Before;
 import org.junit.Ignore;
@@ -39,6 +43,7 @@ import org.springframework.boot.context.embedded.LocalServerPort;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.context.FunctionRegistration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -60,6 +65,8 @@ import reactor.core.publisher.Flux;
 public class RestApplicationTests {
 
 	private static final MediaType EVENT_STREAM = MediaType.TEXT_EVENT_STREAM;
+	private static final MediaType NDJSON = MediaType.valueOf("application/x-ndjson");
+	private static final MediaType CBOR = MediaType.valueOf("application/cbor");
 	@LocalServerPort
 	private int port;
 	@Autowired
@@ -152,6 +159,16 @@ public class RestApplicationTests {
 		assertThat(result.getBody()).isEqualTo("[\"foo\",\"bar\"]");
 	}
 
+	@Test
+	public void streamWords() throws Exception {
+		ResponseEntity<String> result = rest.exchange(
+				RequestEntity.get(new URI("/streamWords")).build(), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(result.getBody()).isEqualTo("[\"foo\",\"bar\"]");
+		// The supplier was only called once
+		assertThat(test.list).hasSize(1);
+	}
+
 	@Test
 	@Ignore("Should this even work? Or do we need to be explicit about the JSON?")
 	public void updates() throws Exception {
@@ -172,6 +189,28 @@ public class RestApplicationTests {
 		assertThat(result.getBody()).isEqualTo("[\"one\",\"two\"]");
 	}
 
+	@Test
+	public void ingest() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/ingest")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"one\",\"two\"]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(result.getBody()).isEqualTo("{\"count\":2}");
+		for (int i = 0; i < 50 && test.list.size() < 2; i++) {
+			Thread.sleep(20);
+		}
+		assertThat(test.list).containsExactly("one", "two");
+	}
+
+	@Test
+	public void ingestTooLarge() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/ingest")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"one\",\"two\",\"three\"]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+		assertThat(test.list).isEmpty();
+	}
+
 	@Test
 	public void addFoos() throws Exception {
 		ResponseEntity<String> result = rest.exchange(RequestEntity
@@ -265,6 +304,16 @@ public class RestApplicationTests {
 		assertThat(result.getBody()).isEqualTo("(FOO)");
 	}
 
+	@Test
+	public void uppercaseBytes() throws Exception {
+		ResponseEntity<byte[]> result = rest.exchange(
+				RequestEntity.post(new URI("/uppercaseBytes"))
+						.contentType(MediaType.APPLICATION_OCTET_STREAM)
+						.body("foo".getBytes()),
+				byte[].class);
+		assertThat(new String(result.getBody())).isEqualTo("FOO");
+	}
+
 	@Test
 	@Ignore("WebFlux would split the request body into lines: TODO make this work the same")
 	public void uppercasePlainText() throws Exception {
@@ -346,6 +395,39 @@ public class RestApplicationTests {
 		assertThat(rest.getForObject("/uppercase/foo", String.class)).isEqualTo("(FOO)");
 	}
 
+	@Test
+	public void bareUppercaseGet() {
+		assertThat(rest.getForObject("/bareUppercase/foo", String.class))
+				.isEqualTo("(FOO)");
+	}
+
+	@Test
+	public void cachedGet() throws Exception {
+		ResponseEntity<String> first = rest.getForEntity("/cached/foo", String.class);
+		ResponseEntity<String> second = rest.getForEntity("/cached/foo", String.class);
+		assertThat(second.getBody()).isEqualTo("(FOO)");
+		assertThat(second.getHeaders().getETag())
+				.isEqualTo(first.getHeaders().getETag());
+		assertThat(test.list).hasSize(1);
+		assertThat(rest.exchange(RequestEntity.get(new URI("/cached/foo"))
+				.ifNoneMatch(first.getHeaders().getETag()).build(), String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+	}
+
+	@Test
+	public void cachedFluxGet() throws Exception {
+		ResponseEntity<String> first = rest.getForEntity("/cachedFlux/foo",
+				String.class);
+		assertThat(first.getBody()).isEqualTo("(FOO)");
+		assertThat(first.getHeaders().getETag()).isNotNull();
+		assertThat(first.getHeaders().getCacheControl()).contains("max-age");
+		ResponseEntity<String> second = rest.getForEntity("/cachedFlux/foo",
+				String.class);
+		assertThat(second.getHeaders().getETag())
+				.isEqualTo(first.getHeaders().getETag());
+		assertThat(test.list).hasSize(1);
+	}
+
 	@Test
 	public void convertGet() {
 		assertThat(rest.getForObject("/wrap/123", String.class)).isEqualTo("..123..");
@@ -376,6 +458,63 @@ public class RestApplicationTests {
 						.isEqualTo("[{\"value\":\"FOO\"},{\"value\":\"BAR\"}]");
 	}
 
+	@Test
+	public void uppercaseJsonLines() throws Exception {
+		assertThat(rest.exchange(
+				RequestEntity.post(new URI("/maps")).accept(NDJSON).contentType(NDJSON)
+						.body("{\"value\":\"foo\"}\n{\"value\":\"bar\"}\n"),
+				String.class).getBody())
+						.isEqualTo("{\"value\":\"FOO\"}\n{\"value\":\"BAR\"}\n");
+	}
+
+	@Test
+	public void uppercaseCbor() throws Exception {
+		ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+		byte[] body = rest.exchange(RequestEntity.post(new URI("/uppercase"))
+				.contentType(CBOR).accept(CBOR)
+				.body(cbor.writeValueAsBytes(Arrays.asList("foo", "bar"))),
+				byte[].class).getBody();
+		assertThat(cbor.readValue(body, List.class)).containsExactly("(FOO)", "(BAR)");
+	}
+
+	@Test
+	public void batch() throws Exception {
+		String body = rest.exchange(RequestEntity.post(new URI("/_batch"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.body("[{\"function\":\"uppercase\",\"input\":\"foo\"},"
+						+ "{\"function\":\"missing\",\"input\":\"bar\"}]"),
+				String.class).getBody();
+		assertThat(body).contains("{\"index\":0,\"result\":\"(FOO)\"}");
+		assertThat(body).contains("{\"index\":1,\"error\":");
+	}
+
+	@Test
+	public void batchPojoAlias() throws Exception {
+		String body = rest.exchange(RequestEntity.post(new URI("/_batch"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.body("[{\"function\":\"pojo/up\",\"input\":{\"value\":\"foo\"}}]"),
+				String.class).getBody();
+		assertThat(body).contains("{\"index\":0,\"result\":{\"value\":\"FOO\"}}");
+	}
+
+	@Test
+	public void batchComposite() throws Exception {
+		String body = rest.exchange(RequestEntity.post(new URI("/_batch"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.body("[{\"function\":\"pojo/up,bareUpFoos\",\"input\":{\"value\":\"foo\"}}]"),
+				String.class).getBody();
+		assertThat(body).contains("{\"index\":0,\"result\":{\"value\":\"FOO\"}}");
+	}
+
+	@Test
+	public void batchMultipleOutputs() throws Exception {
+		String body = rest.exchange(RequestEntity.post(new URI("/_batch"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.body("[{\"function\":\"twice\",\"input\":\"foo\"}]"),
+				String.class).getBody();
+		assertThat(body).contains("{\"index\":0,\"error\":");
+	}
+
 	@Test
 	public void uppercaseSSE() throws Exception {
 		assertThat(rest.exchange(RequestEntity.post(new URI("/uppercase"))
@@ -400,11 +539,33 @@ public class RestApplicationTests {
 					.map(value -> "(" + value.trim().toUpperCase() + ")");
 		}
 
+		@Bean
+		public FunctionRegistration<Function<String, String>> cached() {
+			return new FunctionRegistration<Function<String, String>>(value -> {
+				list.add(value);
+				return "(" + value.trim().toUpperCase() + ")";
+			}).properties(Collections.singletonMap("cache.enabled", "true"));
+		}
+
+		@Bean
+		public FunctionRegistration<Function<Flux<String>, Flux<String>>> cachedFlux() {
+			return new FunctionRegistration<Function<Flux<String>, Flux<String>>>(
+					flux -> flux.map(value -> {
+						list.add(value);
+						return "(" + value.trim().toUpperCase() + ")";
+					})).properties(Collections.singletonMap("cache.enabled", "true"));
+		}
+
 		@Bean
 		public Function<String, String> bareUppercase() {
 			return value -> "(" + value.trim().toUpperCase() + ")";
 		}
 
+		@Bean
+		public Function<byte[], byte[]> uppercaseBytes() {
+			return value -> new String(value).toUpperCase().getBytes();
+		}
+
 		@Bean
 		public Function<Flux<Foo>, Flux<Foo>> upFoos() {
 			return flux -> flux.log()
@@ -416,6 +577,16 @@ public class RestApplicationTests {
 			return value -> new Foo(value.getValue().trim().toUpperCase());
 		}
 
+		@Bean({ "upFoo", "pojo/up" })
+		public Function<Foo, Foo> upFoo() {
+			return value -> new Foo(value.getValue().trim().toUpperCase());
+		}
+
+		@Bean
+		public Function<Flux<String>, Flux<String>> twice() {
+			return flux -> flux.flatMap(value -> Flux.just(value, value));
+		}
+
 		@Bean
 		public Function<Flux<Integer>, Flux<String>> wrap() {
 			return flux -> flux.log().map(value -> ".." + value + "..");
@@ -461,11 +632,29 @@ public class RestApplicationTests {
 			return () -> Arrays.asList("foo", "bar");
 		}
 
+		@Bean
+		public Supplier<Stream<String>> streamWords() {
+			return () -> {
+				list.add("streamWords");
+				return Stream.of("foo", "bar");
+			};
+		}
+
 		@Bean
 		public Consumer<Flux<String>> updates() {
 			return flux -> flux.subscribe(value -> list.add(value));
 		}
 
+		@Bean
+		public FunctionRegistration<Consumer<Flux<String>>> ingest() {
+			Map<String, String> properties = new HashMap<>();
+			properties.put("async.enabled", "true");
+			properties.put("async.queue", "2");
+			return new FunctionRegistration<Consumer<Flux<String>>>(
+					flux -> flux.subscribe(value -> list.add(value)))
+							.properties(properties);
+		}
+
 		@Bean
 		public Consumer<Flux<Foo>> addFoos() {
 			return flux -> flux.subscribe(value -> list.add(value.getValue()));
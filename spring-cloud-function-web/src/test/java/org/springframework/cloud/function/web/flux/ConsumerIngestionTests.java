@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.support.FluxConsumer;
+
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ConsumerIngestionTests {
+
+	private final Map<String, String> properties = new HashMap<>();
+
+	private final ConsumerIngestion ingestion = ingestion();
+
+	// Never subscribes, so the queue is not drained
+	private final Consumer<Flux<?>> consumer = flux -> {
+	};
+
+	@After
+	public void close() throws Exception {
+		ingestion.destroy();
+	}
+
+	@Test
+	public void disabledByDefault() {
+		assertThat(ingestion.isEnabled("other")).isFalse();
+		assertThat(ingestion.isEnabled("items")).isTrue();
+	}
+
+	@Test
+	public void queueFull() {
+		assertThat(ingestion.offer("items", consumer, Flux.just("one", "two")))
+				.isEqualTo(2);
+		assertThat(ingestion.offer("items", consumer, Flux.just("three")))
+				.isEqualTo(ConsumerIngestion.FULL);
+	}
+
+	@Test
+	public void tooLarge() {
+		AtomicInteger read = new AtomicInteger();
+		Flux<Integer> items = Flux.range(0, 1000).doOnNext(item -> read.incrementAndGet());
+		assertThat(ingestion.offer("items", consumer, items))
+				.isEqualTo(ConsumerIngestion.TOO_LARGE);
+		// Only read until it was clear that the items do not fit
+		assertThat(read.get()).isEqualTo(3);
+		// Nothing was queued
+		assertThat(ingestion.offer("items", consumer, Flux.just("one", "two")))
+				.isEqualTo(2);
+	}
+
+	@Test
+	public void concurrentRequests() throws Exception {
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		Flux<String> slow = Flux.just("one").concatWith(Flux.defer(() -> {
+			reading.countDown();
+			try {
+				finish.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Flux.empty();
+		}));
+		CompletableFuture<Integer> first = CompletableFuture
+				.supplyAsync(() -> ingestion.offer("items", consumer, slow));
+		assertThat(reading.await(10, TimeUnit.SECONDS)).isTrue();
+		// The first request only holds the room it has read so far
+		assertThat(ingestion.offer("items", consumer, Flux.just("two"))).isEqualTo(1);
+		finish.countDown();
+		assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+	}
+
+	@Test
+	public void consumerFailsForItem() throws Exception {
+		List<String> list = Collections.synchronizedList(new ArrayList<>());
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Consumer<Flux<?>> failing = (Consumer) new FluxConsumer<Object>(value -> {
+			if ("bad".equals(value)) {
+				throw new IllegalStateException("Planned");
+			}
+			list.add((String) value);
+		});
+		assertThat(ingestion.offer("items", failing, Flux.just("bad", "one")))
+				.isEqualTo(2);
+		await(list, 1);
+		assertThat(ingestion.offer("items", failing, Flux.just("two"))).isEqualTo(1);
+		await(list, 2);
+		assertThat(list).containsExactly("one", "two");
+	}
+
+	@Test
+	public void fluxConsumerFails() throws Exception {
+		List<String> list = Collections.synchronizedList(new ArrayList<>());
+		Consumer<Flux<?>> failing = flux -> flux.map(value -> {
+			if ("bad".equals(value)) {
+				throw new IllegalStateException("Planned");
+			}
+			return (String) value;
+		}).subscribe(list::add, error -> {
+		});
+		assertThat(ingestion.offer("items", failing, Flux.just("bad"))).isEqualTo(1);
+		assertThat(ingestion.offer("items", failing, Flux.just("one"))).isEqualTo(1);
+		// The consumer is given a new flux after the error
+		await(list, 1);
+		assertThat(list).containsExactly("one");
+	}
+
+	private void await(List<String> list, int size) throws InterruptedException {
+		for (int i = 0; i < 100 && list.size() < size; i++) {
+			Thread.sleep(50);
+		}
+	}
+
+	private ConsumerIngestion ingestion() {
+		properties.put(ConsumerIngestion.ASYNC_ENABLED, "true");
+		properties.put(ConsumerIngestion.ASYNC_QUEUE, "2");
+		FunctionInspector inspector = mock(FunctionInspector.class);
+		when(inspector.getProperties("items")).thenReturn(properties);
+		when(inspector.getProperties("other")).thenReturn(Collections.emptyMap());
+		return new ConsumerIngestion(inspector);
+	}
+
+}
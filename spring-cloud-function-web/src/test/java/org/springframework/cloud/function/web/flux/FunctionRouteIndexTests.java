@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import org.springframework.cloud.function.context.InMemoryFunctionCatalog;
+import org.springframework.cloud.function.web.flux.FunctionRouteIndex.Kind;
+import org.springframework.cloud.function.web.flux.FunctionRouteIndex.Route;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class FunctionRouteIndexTests {
+
+	private final Map<String, Supplier<?>> suppliers = new HashMap<>();
+
+	private final Map<String, Function<?, ?>> functions = new HashMap<>();
+
+	private final Map<String, Consumer<?>> consumers = new HashMap<>();
+
+	private final InMemoryFunctionCatalog catalog = new InMemoryFunctionCatalog(
+			suppliers, functions, consumers);
+
+	@Test
+	public void functionWithArgument() {
+		functions.put("uppercase", value -> value);
+		Route route = FunctionRouteIndex.build(catalog).match(true, "/uppercase/foo",
+				1);
+		assertThat(route.getKind()).isEqualTo(Kind.FUNCTION);
+		assertThat(route.getName()).isEqualTo("uppercase");
+		assertThat(route.getArgument()).isEqualTo("foo");
+	}
+
+	@Test
+	public void supplierPreferredToFunctionPrefix() {
+		functions.put("post", value -> value);
+		suppliers.put("post/more", () -> "foo");
+		FunctionRouteIndex routes = FunctionRouteIndex.build(catalog);
+		assertThat(routes.match(true, "post/more", 0).getKind())
+				.isEqualTo(Kind.SUPPLIER);
+		assertThat(routes.match(true, "post/less", 0).getArgument()).isEqualTo("less");
+	}
+
+	@Test
+	public void compositeFunction() {
+		functions.put("uppercase", value -> value);
+		functions.put("post/more", value -> value);
+		FunctionRouteIndex routes = FunctionRouteIndex.build(catalog);
+		Route route = routes.match(true, "post/more,uppercase/foo", 0);
+		assertThat(route.getName()).isEqualTo("post/more,uppercase");
+		assertThat(route.getArgument()).isEqualTo("foo");
+		assertThat(routes.match(false, "uppercase,post/more", 0).getName())
+				.isEqualTo("uppercase,post/more");
+		assertThat(routes.match(false, "uppercase,missing", 0)).isNull();
+	}
+
+	@Test
+	public void postMatchesWholePath() {
+		functions.put("uppercase", value -> value);
+		consumers.put("updates", value -> {
+		});
+		FunctionRouteIndex routes = FunctionRouteIndex.build(catalog);
+		assertThat(routes.match(false, "uppercase/foo", 0)).isNull();
+		assertThat(routes.match(false, "updates", 0).getKind())
+				.isEqualTo(Kind.CONSUMER);
+		assertThat(routes.match(true, "updates", 0)).isNull();
+	}
+
+	@Test
+	public void detectsChanges() {
+		FunctionRouteIndex routes = FunctionRouteIndex.build(catalog);
+		assertThat(routes.isCurrent(catalog)).isTrue();
+		functions.put("uppercase", value -> value);
+		assertThat(routes.isCurrent(catalog)).isFalse();
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.registry.FunctionCatalog;
+import org.springframework.cloud.function.web.flux.support.Event;
+
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class SupplierMulticasterTests {
+
+	private final Map<String, String> properties = new HashMap<>();
+
+	private final FunctionInspector inspector = mock(FunctionInspector.class);
+
+	private final SupplierMulticaster multicaster = multicaster();
+
+	private final Supplier<Flux<?>> numbers = () -> Flux.range(0, 5);
+
+	@Test
+	public void disabledByDefault() {
+		assertThat(multicaster.isEnabled("other")).isFalse();
+	}
+
+	@Test
+	public void dropOldest() {
+		properties.put(SupplierMulticaster.SHARED_BUFFER, "2");
+		Collector collector = new Collector();
+		multicaster.subscribe("numbers", numbers).subscribe(collector);
+		collector.subscription.request(10);
+		assertThat(collector.items).containsExactly(3, 4);
+		assertThat(collector.completed).isTrue();
+	}
+
+	@Test
+	public void dropNewest() {
+		properties.put(SupplierMulticaster.SHARED_BUFFER, "2");
+		properties.put(SupplierMulticaster.SHARED_OVERFLOW, "drop-newest");
+		Collector collector = new Collector();
+		multicaster.subscribe("numbers", numbers).subscribe(collector);
+		collector.subscription.request(10);
+		assertThat(collector.items).containsExactly(0, 1);
+	}
+
+	@Test
+	public void disconnect() {
+		properties.put(SupplierMulticaster.SHARED_BUFFER, "2");
+		properties.put(SupplierMulticaster.SHARED_OVERFLOW, "disconnect");
+		Collector collector = new Collector();
+		multicaster.subscribe("numbers", numbers).subscribe(collector);
+		assertThat(collector.error).isNotNull();
+		assertThat(collector.items).isEmpty();
+	}
+
+	@Test
+	public void sharedUpstream() {
+		AtomicInteger count = new AtomicInteger();
+		Supplier<Flux<?>> supplier = () -> {
+			count.incrementAndGet();
+			return Flux.never();
+		};
+		Collector first = new Collector();
+		Collector second = new Collector();
+		multicaster.subscribe("never", supplier).subscribe(first);
+		multicaster.subscribe("never", supplier).subscribe(second);
+		assertThat(count.get()).isEqualTo(1);
+		first.subscription.cancel();
+		second.subscription.cancel();
+		multicaster.subscribe("never", supplier).subscribe(new Collector());
+		assertThat(count.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void replayAfterReconnect() {
+		properties.put(SupplierMulticaster.SHARED_REPLAY, "10");
+		DirectProcessor<Object> processor = DirectProcessor.create();
+		AtomicInteger count = new AtomicInteger();
+		Supplier<Flux<?>> supplier = () -> {
+			count.incrementAndGet();
+			return processor;
+		};
+		Collector first = new Collector();
+		multicaster.events("numbers", supplier, null).subscribe(first);
+		first.subscription.request(Long.MAX_VALUE);
+		processor.onNext("foo");
+		processor.onNext("bar");
+		first.subscription.cancel();
+		// Still connected to the upstream, so this one is retained
+		processor.onNext("spam");
+		Collector second = new Collector();
+		String last = String.valueOf(((Event) first.items.get(0)).getId());
+		multicaster.events("numbers", supplier, last).subscribe(second);
+		second.subscription.request(Long.MAX_VALUE);
+		processor.onNext("bucket");
+		assertThat(count.get()).isEqualTo(1);
+		assertThat(second.items).extracting("value").containsExactly("bar", "spam",
+				"bucket");
+	}
+
+	@Test
+	public void invalidPropertiesFailOnStartup() {
+		properties.put(SupplierMulticaster.SHARED_OVERFLOW, "drop-everything");
+		FunctionCatalog catalog = mock(FunctionCatalog.class);
+		when(catalog.getNames(Supplier.class))
+				.thenReturn(Collections.singleton("numbers"));
+		SupplierMulticaster validated = new SupplierMulticaster(inspector, catalog);
+		assertThatThrownBy(() -> validated.afterSingletonsInstantiated())
+				.isInstanceOf(IllegalStateException.class).hasMessageContaining("numbers");
+	}
+
+	private SupplierMulticaster multicaster() {
+		properties.put(SupplierMulticaster.SHARED_ENABLED, "true");
+		when(inspector.getProperties("numbers")).thenReturn(properties);
+		when(inspector.getProperties("never")).thenReturn(properties);
+		when(inspector.getProperties("other")).thenReturn(Collections.emptyMap());
+		return new SupplierMulticaster(inspector);
+	}
+
+	private static class Collector implements Subscriber<Object> {
+
+		private final List<Object> items = new ArrayList<>();
+
+		private Subscription subscription;
+
+		private Throwable error;
+
+		private boolean completed;
+
+		@Override
+		public void onSubscribe(Subscription s) {
+			this.subscription = s;
+		}
+
+		@Override
+		public void onNext(Object item) {
+			this.items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			this.error = t;
+		}
+
+		@Override
+		public void onComplete() {
+			this.completed = true;
+		}
+
+	}
+
+}
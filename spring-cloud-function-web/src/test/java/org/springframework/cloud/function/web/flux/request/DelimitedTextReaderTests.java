@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class DelimitedTextReaderTests {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void lines() throws Exception {
+		assertThat(read("foo\r\nbar\n\nspam\n", "\n", 4)).containsExactly("foo", "bar",
+				"", "spam");
+	}
+
+	@Test
+	public void empty() throws Exception {
+		assertThat(read("", "\n", 4)).isEmpty();
+	}
+
+	@Test
+	public void multiByteCharacterAcrossBuffers() throws Exception {
+		assertThat(read("héllo\nwörld", "\n", 4)).containsExactly(
+				"héllo", "wörld");
+	}
+
+	@Test
+	public void longDelimiter() throws Exception {
+		assertThat(read("foo||bar|spam||", "||", 3)).containsExactly("foo",
+				"bar|spam");
+	}
+
+	@Test
+	public void overlappingDelimiter() throws Exception {
+		assertThat(read("xaaabyaab", "aab", 4)).containsExactly("xa", "y");
+		assertThat(read("abababc1", "ababc", 4)).containsExactly("ab", "1");
+	}
+
+	private List<String> read(String text, String delimiter, int size)
+			throws Exception {
+		List<String> records = new ArrayList<>();
+		try (DelimitedTextReader reader = new DelimitedTextReader(
+				new ByteArrayInputStream(text.getBytes(UTF_8)), UTF_8, delimiter,
+				size)) {
+			String record;
+			while ((record = reader.next()) != null) {
+				records.add(record);
+			}
+		}
+		return records;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import org.springframework.cloud.function.web.flux.response.CoalescingJsonWriter.Framing;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class CoalescingJsonWriterTests {
+
+	private final RecordingEmitter emitter = new RecordingEmitter();
+
+	private final List<Integer> counts = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void chunkSentWhenFull() throws Exception {
+		CoalescingJsonWriter writer = writer(Duration.ofHours(1));
+		writer.write("foo");
+		writer.write("foo");
+		assertThat(emitter.chunks).isEmpty();
+		writer.write("foo");
+		// 18 bytes is more than the size, so it is sent straight away
+		assertThat(emitter.chunks).containsExactly("[\"foo\",\"foo\",\"foo\"");
+		assertThat(counts).containsExactly(3);
+		writer.write("bar");
+		writer.close();
+		assertThat(emitter.chunks).containsExactly("[\"foo\",\"foo\",\"foo\"",
+				",\"bar\"]");
+		assertThat(counts).containsExactly(3, 1);
+	}
+
+	@Test
+	public void chunkSentAfterWindow() throws Exception {
+		CoalescingJsonWriter writer = writer(Duration.ofMillis(20));
+		writer.write("foo");
+		assertThat(emitter.chunks).isEmpty();
+		for (int i = 0; i < 50 && emitter.chunks.isEmpty(); i++) {
+			Thread.sleep(20);
+		}
+		assertThat(emitter.chunks).containsExactly("[\"foo\"");
+		assertThat(counts).containsExactly(1);
+		// Not on one of the shared timer or CPU-bound threads
+		assertThat(emitter.threads).allMatch(name -> name.startsWith("elastic"));
+		writer.close();
+		assertThat(emitter.chunks).containsExactly("[\"foo\"", "]");
+	}
+
+	private CoalescingJsonWriter writer(Duration window) {
+		CoalescingJsonWriter writer = new CoalescingJsonWriter(new ObjectMapper(),
+				emitter, MediaType.APPLICATION_JSON, Framing.ARRAY, 16, window);
+		writer.setListener(counts::add);
+		return writer;
+	}
+
+	private static class RecordingEmitter extends ResponseBodyEmitter {
+
+		private final List<String> chunks = new CopyOnWriteArrayList<>();
+
+		private final List<String> threads = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void send(Object object, MediaType mediaType) throws IOException {
+			this.threads.add(Thread.currentThread().getName());
+			this.chunks.add(StreamUtils.copyToString(
+					((Resource) object).getInputStream(), StandardCharsets.UTF_8));
+		}
+
+	}
+
+}
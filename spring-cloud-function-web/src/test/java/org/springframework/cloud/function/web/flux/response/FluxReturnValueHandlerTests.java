@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.cloud.function.context.FunctionInspector;
+import org.springframework.cloud.function.web.flux.constants.WebRequestConstants;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class FluxReturnValueHandlerTests {
+
+	private static final int ITEMS = 10000;
+
+	private static final int HIGH_WATER_MARK = 16;
+
+	private final MockHttpServletRequest request = new MockHttpServletRequest();
+
+	private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+	private final FunctionInspector inspector = mock(FunctionInspector.class);
+
+	private final FluxReturnValueHandler handler = new FluxReturnValueHandler(
+			inspector, Arrays.asList(new StringHttpMessageConverter()));
+
+	private ServletWebRequest webRequest;
+
+	@Before
+	public void init() {
+		request.setAsyncSupported(true);
+		request.addHeader("Accept", "text/plain");
+		webRequest = new ServletWebRequest(request, response);
+		WebAsyncUtils.getAsyncManager(webRequest)
+				.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+		handler.setHighWaterMark(HIGH_WATER_MARK);
+	}
+
+	@Test
+	public void synchronousSourceIsNotBufferedInMemory() throws Exception {
+		AtomicInteger emitted = new AtomicInteger();
+		AtomicInteger backlog = new AtomicInteger();
+		// One character per item, so the length of the response is the number written
+		Flux<String> flux = Flux.range(0, ITEMS).map(value -> "x").doOnNext(value -> {
+			int unwritten = emitted.incrementAndGet()
+					- response.getContentAsByteArray().length;
+			backlog.accumulateAndGet(unwritten, Math::max);
+		});
+		handler.handleReturnValue(flux,
+				new MethodParameter(getClass().getMethod("flux"), -1),
+				new ModelAndViewContainer(), webRequest);
+		assertThat(backlog.get()).isLessThanOrEqualTo(HIGH_WATER_MARK);
+		assertThat(response.getContentAsByteArray()).hasSize(ITEMS);
+	}
+
+	@Test
+	public void singleValueCancelledOnTimeout() throws Exception {
+		Object function = new Object();
+		when(inspector.getName(function)).thenReturn("slow");
+		doReturn(String.class).when(inspector).getOutputType("slow");
+		doReturn(String.class).when(inspector).getOutputWrapper("slow");
+		webRequest.setAttribute(WebRequestConstants.HANDLER, function,
+				ServletWebRequest.SCOPE_REQUEST);
+		webRequest.setAttribute(WebRequestConstants.INPUT_SINGLE, true,
+				ServletWebRequest.SCOPE_REQUEST);
+		AtomicBoolean cancelled = new AtomicBoolean();
+		Flux<String> flux = Flux.<String>never().doOnCancel(() -> cancelled.set(true));
+		handler.handleReturnValue(flux,
+				new MethodParameter(getClass().getMethod("flux"), -1),
+				new ModelAndViewContainer(), webRequest);
+		assertThat(cancelled.get()).isFalse();
+		MockAsyncContext context = (MockAsyncContext) request.getAsyncContext();
+		for (AsyncListener listener : context.getListeners()) {
+			listener.onTimeout(new AsyncEvent(context));
+		}
+		assertThat(cancelled.get()).isTrue();
+	}
+
+	public Flux<String> flux() {
+		return Flux.empty();
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ResponseBodyEmitterSubscriberTests {
+
+	@Test
+	public void slowClientDoesNotTimeOut() throws Exception {
+		RecordingEmitter emitter = new RecordingEmitter(50);
+		ResponseBodyEmitterSubscriber<String> subscriber = new ResponseBodyEmitterSubscriber<>(
+				MediaType.TEXT_PLAIN, Flux.just("a", "b", "c", "d"), emitter, false,
+				null, 2);
+		subscriber.setIdleTimeout(20);
+		subscriber.start();
+		emitter.await();
+		assertThat(emitter.values).containsExactly("a", "b", "c", "d");
+	}
+
+	@Test
+	public void idlePublisherTimesOut() throws Exception {
+		RecordingEmitter emitter = new RecordingEmitter(0);
+		ResponseBodyEmitterSubscriber<String> subscriber = new ResponseBodyEmitterSubscriber<>(
+				MediaType.TEXT_PLAIN, Flux.just("a").concatWith(Flux.never()), emitter,
+				false, null, 2);
+		subscriber.setIdleTimeout(20);
+		subscriber.start();
+		emitter.await();
+		assertThat(emitter.values).containsExactly("a");
+	}
+
+	private static class RecordingEmitter extends ResponseBodyEmitter {
+
+		private final List<Object> values = new CopyOnWriteArrayList<>();
+
+		private final long delay;
+
+		private volatile boolean complete;
+
+		RecordingEmitter(long delay) {
+			this.delay = delay;
+		}
+
+		@Override
+		public void send(Object object, MediaType mediaType) throws IOException {
+			try {
+				// A slow client
+				Thread.sleep(this.delay);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.values.add(object);
+		}
+
+		@Override
+		public void complete() {
+			this.complete = true;
+		}
+
+		void await() throws InterruptedException {
+			for (int i = 0; i < 100 && !this.complete; i++) {
+				Thread.sleep(20);
+			}
+			assertThat(this.complete).isTrue();
+		}
+
+	}
+
+}